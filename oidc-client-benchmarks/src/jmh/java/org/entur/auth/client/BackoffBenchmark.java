@@ -0,0 +1,124 @@
+package org.entur.auth.client;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of getting a token while the authorization server is failing.
+ *
+ * <ul>
+ *   <li>{@code staleToken}: the token must be refreshed but retrieval failed, so the previous token
+ *       is returned until the backoff time has passed,
+ *   <li>{@code noToken}: no token was ever retrieved, so callers fail until the backoff time has
+ *       passed,
+ *   <li>{@code retry}: the backoff time is zero, so every call retries the failing request.
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BackoffBenchmark {
+    private static final long MUST_REFRESH_THRESHOLD = 60;
+
+    @State(Scope.Benchmark)
+    public static class StaleToken {
+        private StubAccessTokenClient client;
+        private FixedClockAccessTokenFactory accessTokenFactory;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            client = new StubAccessTokenClient(0, 3600);
+            accessTokenFactory = new FixedClockAccessTokenFactory(client);
+            accessTokenFactory.setMinThrottleTime(600);
+            accessTokenFactory.setMaxThrottleTime(600);
+            accessTokenFactory.getAccessToken();
+
+            client.setFailing(true);
+            accessTokenFactory.advance(3600 - MUST_REFRESH_THRESHOLD);
+            accessTokenFactory.getAccessToken(); // Fails, and keeps the previous token
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            accessTokenFactory.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class NoToken {
+        private FixedClockAccessTokenFactory accessTokenFactory;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            StubAccessTokenClient client = new StubAccessTokenClient(0, 3600);
+            client.setFailing(true);
+            accessTokenFactory = new FixedClockAccessTokenFactory(client);
+            accessTokenFactory.setMinThrottleTime(600);
+            accessTokenFactory.setMaxThrottleTime(600);
+            getAccessToken(accessTokenFactory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            accessTokenFactory.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Retry {
+        private FixedClockAccessTokenFactory accessTokenFactory;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            StubAccessTokenClient client = new StubAccessTokenClient(0, 3600);
+            client.setFailing(true);
+            accessTokenFactory = new FixedClockAccessTokenFactory(client);
+            // The default decorrelated jitter policy waits between the minimum and maximum throttle
+            // time, so with both at zero every failure is retried by the next call
+            accessTokenFactory.setMinThrottleTime(0);
+            accessTokenFactory.setMaxThrottleTime(0);
+            getAccessToken(accessTokenFactory);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            accessTokenFactory.close();
+        }
+    }
+
+    @Benchmark
+    public String staleToken(StaleToken state) {
+        return state.accessTokenFactory.getAccessToken();
+    }
+
+    @Benchmark
+    public String noToken(NoToken state) {
+        return getAccessToken(state.accessTokenFactory);
+    }
+
+    @Benchmark
+    public String retry(Retry state) {
+        return getAccessToken(state.accessTokenFactory);
+    }
+
+    private static String getAccessToken(AccessTokenFactory accessTokenFactory) {
+        try {
+            return accessTokenFactory.getAccessToken();
+        } catch (AccessTokenUnavailableException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.entur.auth.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.entur.auth.client.AccessTokenProcessor.AccessTokenAnnotationRestTemplateProcessor.BearerTokenInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+/**
+ * Overhead per request of adding the bearer token, measured against sending the same request
+ * through the same execution chain without a token. Each invocation creates a new request, like
+ * {@code RestTemplate} and {@code RestClient} do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BearerTokenInterceptorBenchmark {
+    private static final URI REQUEST_URI = URI.create("https://api.example.com/resource");
+    private static final byte[] BODY = new byte[0];
+
+    private AccessTokenFactory accessTokenFactory;
+    private BearerTokenInterceptor interceptor;
+    private BearerTokenRequestInitializer initializer;
+    private ClientHttpRequestExecution execution;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accessTokenFactory = new FixedClockAccessTokenFactory(new StubAccessTokenClient(0, 3600));
+        accessTokenFactory.getAccessToken();
+        interceptor = new BearerTokenInterceptor(accessTokenFactory);
+        initializer = new BearerTokenRequestInitializer(accessTokenFactory);
+
+        MockClientHttpResponse response = new MockClientHttpResponse(BODY, HttpStatus.OK);
+        execution = (request, body) -> response;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        accessTokenFactory.close();
+    }
+
+    @Benchmark
+    public ClientHttpResponse baseline() throws IOException {
+        return execution.execute(new MockClientHttpRequest(HttpMethod.GET, REQUEST_URI), BODY);
+    }
+
+    @Benchmark
+    public ClientHttpResponse interceptor() throws IOException {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, REQUEST_URI);
+        return interceptor.intercept(request, BODY, execution);
+    }
+
+    @Benchmark
+    public ClientHttpResponse requestInitializer() throws IOException {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, REQUEST_URI);
+        initializer.initialize(request);
+        return execution.execute(request, BODY);
+    }
+}
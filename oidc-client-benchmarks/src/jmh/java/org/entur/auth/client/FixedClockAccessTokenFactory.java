@@ -0,0 +1,26 @@
+package org.entur.auth.client;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Factory with a clock which only moves when told to, so each benchmark keeps its token in the
+ * state it measures, regardless of how long the benchmark runs.
+ */
+public class FixedClockAccessTokenFactory extends AccessTokenFactory {
+
+    public FixedClockAccessTokenFactory(AccessTokenClient client) {
+        super(client);
+        this.clock = Clock.fixed(clock.instant(), clock.getZone());
+    }
+
+    /**
+     * Moves the clock forward.
+     *
+     * @param seconds the number of seconds to move
+     */
+    public void advance(long seconds) {
+        this.clock =
+                Clock.fixed(Instant.ofEpochMilli(clock.millis() + seconds * 1000), clock.getZone());
+    }
+}
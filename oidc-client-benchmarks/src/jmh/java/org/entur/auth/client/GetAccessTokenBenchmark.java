@@ -0,0 +1,87 @@
+package org.entur.auth.client;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of getting a valid token from a shared factory, the path taken by every outgoing request,
+ * with 1 to 256 threads contending for the same factory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetAccessTokenBenchmark {
+    private static final TokenKey AUDIENCE = TokenKey.of("https://other.example.com", Set.of());
+
+    private AccessTokenFactory accessTokenFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accessTokenFactory = new FixedClockAccessTokenFactory(new StubAccessTokenClient(0, 3600));
+        accessTokenFactory.getAccessToken();
+        accessTokenFactory.getAccessToken(AUDIENCE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        accessTokenFactory.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String threads1() {
+        return accessTokenFactory.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String threads4() {
+        return accessTokenFactory.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String threads16() {
+        return accessTokenFactory.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String threads64() {
+        return accessTokenFactory.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(256)
+    public String threads256() {
+        return accessTokenFactory.getAccessToken();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String authorizationHeader() {
+        return accessTokenFactory.getAuthorizationHeader();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String audience() {
+        return accessTokenFactory.getAccessToken(AUDIENCE);
+    }
+}
@@ -0,0 +1,70 @@
+package org.entur.auth.client;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of getting a token while it is being refreshed. The returned tokens have a lifetime which
+ * puts them at a refresh threshold as soon as they are received, so every call takes the path of
+ * the transition instead of the fast path:
+ *
+ * <ul>
+ *   <li>{@code shouldRefresh}: callers get the current token while a refresh runs in the
+ *       background,
+ *   <li>{@code mustRefresh}: callers wait for the single refresh in flight to complete.
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class RefreshBoundaryBenchmark {
+    private static final long MUST_REFRESH_THRESHOLD = 60;
+    private static final long SHOULD_REFRESH_THRESHOLD = 120;
+
+    @Param({"shouldRefresh", "mustRefresh"})
+    public String threshold;
+
+    /** Latency (in microseconds) of the authorization server. */
+    @Param({"0", "100", "1000"})
+    public long latency;
+
+    private AccessTokenFactory accessTokenFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long expiresIn =
+                "mustRefresh".equals(threshold) ? MUST_REFRESH_THRESHOLD : SHOULD_REFRESH_THRESHOLD;
+        accessTokenFactory =
+                new FixedClockAccessTokenFactory(new StubAccessTokenClient(latency, expiresIn));
+        accessTokenFactory.setMustRefreshThreshold(MUST_REFRESH_THRESHOLD);
+        accessTokenFactory.setShouldRefreshThreshold(SHOULD_REFRESH_THRESHOLD);
+        accessTokenFactory.getAccessToken();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        accessTokenFactory.close();
+    }
+
+    @Benchmark
+    public String getAccessToken() {
+        return accessTokenFactory.getAccessToken();
+    }
+}
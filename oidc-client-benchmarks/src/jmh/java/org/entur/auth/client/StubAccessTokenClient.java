@@ -0,0 +1,80 @@
+package org.entur.auth.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link AccessTokenClient} answering from memory after a configurable latency, standing in for the
+ * authorization server in benchmarks.
+ */
+public class StubAccessTokenClient implements AccessTokenClient {
+    /** Signed JWTs from typical authorization servers are around 800 characters. */
+    private static final String TOKEN_PREFIX = "x".repeat(800);
+
+    private final long latencyNanos;
+    private final long expiresIn;
+    private final AtomicLong requests = new AtomicLong();
+    private volatile boolean failing;
+
+    /**
+     * Constructs a stub client.
+     *
+     * @param latencyMicros time (in microseconds) each request takes
+     * @param expiresIn lifetime (in seconds) of the returned tokens
+     */
+    public StubAccessTokenClient(long latencyMicros, long expiresIn) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.expiresIn = expiresIn;
+    }
+
+    @Override
+    public TokenHolder requestAccessToken() throws IOException {
+        long request = requests.incrementAndGet();
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+        if (failing) {
+            throw new IOException("Authorization server is unavailable");
+        }
+
+        return IssuedToken.of(TOKEN_PREFIX + request, null, expiresIn);
+    }
+
+    @Override
+    public TokenHolder requestAccessToken(String audience, String scope) throws IOException {
+        return requestAccessToken();
+    }
+
+    @Override
+    public boolean supportsAudiencesAndScopes() {
+        return true;
+    }
+
+    @Override
+    public TokenHolder renewAccessToken(String refreshToken) throws IOException {
+        return requestAccessToken();
+    }
+
+    @Override
+    public void revokeRefreshToken(String refreshToken) {}
+
+    /**
+     * Makes subsequent requests fail, or succeed again.
+     *
+     * @param failing true to fail all requests
+     */
+    public void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * Gets the number of requests made so far, including failed ones.
+     *
+     * @return the number of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+}
@@ -2,25 +2,40 @@ package org.entur.auth.client;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.time.Duration;
 import java.util.Collections;
+import org.entur.auth.client.properties.OidcAuthClientAuth0Properties;
+import org.entur.auth.client.properties.OidcAuthClientProperties;
+import org.entur.auth.client.properties.OidcAuthClientsProperties;
 import org.springframework.beans.BeansException;
 import org.springframework.boot.restclient.RestTemplateBuilder;
 import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRequest;
 import org.springframework.http.client.ClientHttpRequestExecution;
 import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.ReflectionUtils;
+import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
 
 /**
  * Utility class responsible for processing beans annotated with {@link AccessToken} and injecting
- * customized {@link RestTemplate} instances that automatically include bearer tokens.
+ * customized {@link RestTemplate}, {@link RestClient} or {@link WebClient} instances that
+ * automatically include bearer tokens.
  */
 class AccessTokenProcessor {
+    private static final String REST_TEMPLATE_CLASS_NAME =
+            "org.springframework.web.client.RestTemplate";
+    private static final String REST_CLIENT_CLASS_NAME = "org.springframework.web.client.RestClient";
+    private static final String WEB_CLIENT_CLASS_NAME =
+            "org.springframework.web.reactive.function.client.WebClient";
+
     /**
-     * Processes the given bean before initialization by injecting a custom {@link RestTemplate} if
-     * the bean contains fields annotated with {@link AccessToken}.
+     * Processes the given bean before initialization by injecting a custom {@link RestTemplate},
+     * {@link RestClient} or {@link WebClient} if the bean contains fields annotated with {@link
+     * AccessToken}.
      *
      * @param applicationContext the Spring application context
      * @param bean the bean instance being initialized
@@ -37,8 +52,15 @@ class AccessTokenProcessor {
                         if (AccessTokenFactory.class.isAssignableFrom(field.getType())) {
                             AccessTokenAnnotationAccessTokenFactoryProcessor.inject(
                                     applicationContext, bean, field);
-                        } else if (isAssignableFrom(applicationContext.getClassLoader(), field.getType())) {
+                        } else if (isAssignableFrom(
+                                applicationContext.getClassLoader(), REST_TEMPLATE_CLASS_NAME, field.getType())) {
                             AccessTokenAnnotationRestTemplateProcessor.inject(applicationContext, bean, field);
+                        } else if (isAssignableFrom(
+                                applicationContext.getClassLoader(), REST_CLIENT_CLASS_NAME, field.getType())) {
+                            AccessTokenAnnotationRestClientProcessor.inject(applicationContext, bean, field);
+                        } else if (isAssignableFrom(
+                                applicationContext.getClassLoader(), WEB_CLIENT_CLASS_NAME, field.getType())) {
+                            AccessTokenAnnotationWebClientProcessor.inject(applicationContext, bean, field);
                         }
                     }
                 });
@@ -46,9 +68,8 @@ class AccessTokenProcessor {
         return bean;
     }
 
-    private static boolean isAssignableFrom(ClassLoader classLoader, Class<?> targetType) {
-
-        var candidateClassName = "org.springframework.web.client.RestTemplate";
+    private static boolean isAssignableFrom(
+            ClassLoader classLoader, String candidateClassName, Class<?> targetType) {
         try {
             ClassLoader ccl = Thread.currentThread().getContextClassLoader();
             Class<?> candidate =
@@ -59,6 +80,37 @@ class AccessTokenProcessor {
         }
     }
 
+    /**
+     * Resolves the maximum time to wait for a token for the client with the given bean name, using
+     * the configuration of the client or else the default of all clients.
+     *
+     * @param applicationContext the Spring application context
+     * @param name the bean name of the client, or blank for the only client
+     * @return the maximum time to wait, or null to wait until a token is retrieved
+     */
+    static Duration getMaxWait(ApplicationContext applicationContext, String name) {
+        OidcAuthClientsProperties clientsProperties =
+                applicationContext.getBeanProvider(OidcAuthClientsProperties.class).getIfAvailable();
+        OidcAuthClientProperties clientProperties =
+                applicationContext.getBeanProvider(OidcAuthClientProperties.class).getIfAvailable();
+
+        OidcAuthClientAuth0Properties properties = null;
+        if (clientsProperties != null && name != null) {
+            properties = clientsProperties.getAuth0().get(name);
+        }
+        if (properties == null
+                && clientProperties != null
+                && (name == null || name.isBlank() || name.equals("auth0"))) {
+            properties = clientProperties.getAuth0();
+        }
+
+        Long maxWait = properties != null ? properties.getMaxWait() : null;
+        if (maxWait == null && clientsProperties != null) {
+            maxWait = clientsProperties.getMaxWait();
+        }
+        return maxWait != null ? Duration.ofMillis(maxWait) : null;
+    }
+
     /**
      * Internal processor responsible for injecting {@link AccessTokenFactory} instances into fields
      * annotated with {@link AccessToken}.
@@ -104,7 +156,8 @@ class AccessTokenProcessor {
                             .interceptors(
                                     Collections.singletonList(
                                             new AccessTokenAnnotationRestTemplateProcessor.BearerTokenInterceptor(
-                                                    accessTokenFactory)))
+                                                    accessTokenFactory,
+                                                    getMaxWait(applicationContext, annotation.value()))))
                             .build();
             ReflectionUtils.setField(field, bean, restTemplate);
         }
@@ -133,13 +186,19 @@ class AccessTokenProcessor {
 
         /**
          * Custom interceptor that appends an Authorization header with a bearer token to each HTTP
-         * request.
+         * request, waiting at most {@code maxWait} for a token if set.
          */
-        private record BearerTokenInterceptor(AccessTokenFactory accessTokenFactory)
+        record BearerTokenInterceptor(AccessTokenFactory accessTokenFactory, Duration maxWait)
                 implements ClientHttpRequestInterceptor {
 
+            BearerTokenInterceptor(AccessTokenFactory accessTokenFactory) {
+                this(accessTokenFactory, null);
+            }
+
             /**
-             * Intercepts an HTTP request to inject a bearer token into the Authorization header.
+             * Intercepts an HTTP request to inject a bearer token into the Authorization header. The
+             * header value is cached by the {@link AccessTokenFactory}, so it is not rebuilt for each
+             * request.
              *
              * @param request the HTTP request
              * @param body the request body
@@ -151,9 +210,98 @@ class AccessTokenProcessor {
             public ClientHttpResponse intercept(
                     HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
                     throws IOException {
-                request.getHeaders().setBearerAuth(accessTokenFactory.getAccessToken());
+                setAuthorizationHeader(request.getHeaders(), accessTokenFactory, maxWait);
                 return execution.execute(request, body);
             }
         }
     }
+
+    /**
+     * Internal processor responsible for injecting {@link RestClient} instances into fields
+     * annotated with {@link AccessToken}.
+     */
+    static class AccessTokenAnnotationRestClientProcessor {
+        /**
+         * Injects a {@link RestClient} into the specified field of the given bean. The client is
+         * built from the application's {@link RestClient.Builder} if available, keeping its request
+         * factory and customizers, and adds bearer tokens using a {@link
+         * BearerTokenRequestInitializer}.
+         *
+         * @param applicationContext the Spring application context
+         * @param bean the bean instance containing the annotated field
+         * @param field the field to inject with a customized {@link RestClient}
+         */
+        public static void inject(ApplicationContext applicationContext, Object bean, Field field) {
+            ReflectionUtils.makeAccessible(field);
+            AccessToken annotation = field.getAnnotation(AccessToken.class);
+            AccessTokenFactory accessTokenFactory =
+                    AccessTokenAnnotationRestTemplateProcessor.getAccessTokenFactory(
+                            applicationContext, annotation.value());
+
+            RestClient restClient =
+                    applicationContext
+                            .getBeanProvider(RestClient.Builder.class)
+                            .getIfAvailable(RestClient::builder)
+                            .clone()
+                            .requestInitializer(
+                                    new BearerTokenRequestInitializer(
+                                            accessTokenFactory,
+                                            getMaxWait(applicationContext, annotation.value())))
+                            .build();
+            ReflectionUtils.setField(field, bean, restClient);
+        }
+    }
+
+    /**
+     * Internal processor responsible for injecting {@link WebClient} instances into fields annotated
+     * with {@link AccessToken}. Only loaded when spring-webflux is on the classpath.
+     */
+    static class AccessTokenAnnotationWebClientProcessor {
+        /**
+         * Injects a {@link WebClient} into the specified field of the given bean. The client is built
+         * from the application's {@link WebClient.Builder} if available, and adds bearer tokens using
+         * a {@link BearerTokenExchangeFilterFunction}.
+         *
+         * @param applicationContext the Spring application context
+         * @param bean the bean instance containing the annotated field
+         * @param field the field to inject with a customized {@link WebClient}
+         */
+        public static void inject(ApplicationContext applicationContext, Object bean, Field field) {
+            ReflectionUtils.makeAccessible(field);
+            AccessToken annotation = field.getAnnotation(AccessToken.class);
+            AccessTokenFactory accessTokenFactory =
+                    AccessTokenAnnotationRestTemplateProcessor.getAccessTokenFactory(
+                            applicationContext, annotation.value());
+
+            WebClient webClient =
+                    applicationContext
+                            .getBeanProvider(WebClient.Builder.class)
+                            .getIfAvailable(WebClient::builder)
+                            .clone()
+                            .filter(
+                                    new BearerTokenExchangeFilterFunction(
+                                            accessTokenFactory,
+                                            getMaxWait(applicationContext, annotation.value())))
+                            .build();
+            ReflectionUtils.setField(field, bean, webClient);
+        }
+    }
+
+    /**
+     * Sets the Authorization header using the header value cached by the {@link
+     * AccessTokenFactory}.
+     *
+     * @param headers the request headers
+     * @param accessTokenFactory the factory providing the access token
+     * @param maxWait the maximum time to wait for a token, or null to wait until it is retrieved
+     * @throws AccessTokenUnavailableException if no token is available within the maximum wait
+     */
+    static void setAuthorizationHeader(
+            HttpHeaders headers, AccessTokenFactory accessTokenFactory, Duration maxWait) {
+        String authorizationHeader =
+                maxWait != null
+                        ? accessTokenFactory.getAuthorizationHeader(maxWait)
+                        : accessTokenFactory.getAuthorizationHeader();
+        headers.set(HttpHeaders.AUTHORIZATION, authorizationHeader);
+    }
 }
@@ -50,6 +50,7 @@ public class Auth0AccessTokenFactory implements Supplier<AccessTokenFactory> {
                         properties.getMaxThrottleTime() != null
                                 ? properties.getMaxThrottleTime()
                                 : maxThrottleTime)
+                .withAuth0Sdk(properties.getAuth0Sdk())
                 .buildAuth0();
     }
 }
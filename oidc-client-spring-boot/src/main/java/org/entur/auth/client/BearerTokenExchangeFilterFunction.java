@@ -0,0 +1,86 @@
+package org.entur.auth.client;
+
+import java.time.Duration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link ExchangeFilterFunction} that adds an Authorization header with a bearer token to each
+ * request sent by a {@link org.springframework.web.reactive.function.client.WebClient}.
+ *
+ * <p>The token is retrieved with {@link AccessTokenFactory#getAuthorizationHeaderAsync()}, so no
+ * thread is blocked while a token is being retrieved. Requests sent while a token refresh is
+ * running share that refresh.
+ *
+ * <p><b>Usage:</b>
+ *
+ * <pre>
+ * WebClient webClient = WebClient.builder()
+ *         .filter(new BearerTokenExchangeFilterFunction(accessTokenFactory))
+ *         .build();
+ * </pre>
+ */
+public class BearerTokenExchangeFilterFunction implements ExchangeFilterFunction {
+    private final AccessTokenFactory accessTokenFactory;
+    private final Duration maxWait;
+
+    /**
+     * Constructs a filter adding bearer tokens from the given factory.
+     *
+     * @param accessTokenFactory the factory providing the access token
+     */
+    public BearerTokenExchangeFilterFunction(AccessTokenFactory accessTokenFactory) {
+        this(accessTokenFactory, null);
+    }
+
+    /**
+     * Constructs a filter adding bearer tokens from the given factory, failing requests with {@link
+     * AccessTokenUnavailableException} if no token is available within the given time. The token
+     * refresh is not cancelled, so later requests still get the new token.
+     *
+     * @param accessTokenFactory the factory providing the access token
+     * @param maxWait the maximum time to wait for a token, or null to wait until it is retrieved
+     */
+    public BearerTokenExchangeFilterFunction(
+            AccessTokenFactory accessTokenFactory, Duration maxWait) {
+        this.accessTokenFactory = accessTokenFactory;
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return authorizationHeader()
+                .map(
+                        authorizationHeader ->
+                                ClientRequest.from(request)
+                                        .headers(headers -> headers.set(HttpHeaders.AUTHORIZATION, authorizationHeader))
+                                        .build())
+                .flatMap(next::exchange);
+    }
+
+    /**
+     * Non-blocking source of the Authorization header value. The future is provided by the {@link
+     * AccessTokenFactory}, which completes it immediately when the cached token is valid.
+     *
+     * @return a mono emitting the Authorization header value
+     */
+    private Mono<String> authorizationHeader() {
+        Mono<String> header = Mono.fromFuture(accessTokenFactory::getAuthorizationHeaderAsync);
+        if (maxWait == null) {
+            return header;
+        }
+        // Cancels waiting for the token, while the refresh itself continues in the factory
+        return header.timeout(
+                maxWait,
+                Mono.error(
+                        () ->
+                                new AccessTokenUnavailableException(
+                                        "No access token retrieved within "
+                                                + maxWait.toMillis()
+                                                + " ms")));
+    }
+}
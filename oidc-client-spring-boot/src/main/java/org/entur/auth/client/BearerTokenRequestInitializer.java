@@ -0,0 +1,50 @@
+package org.entur.auth.client;
+
+import java.time.Duration;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestInitializer;
+
+/**
+ * {@link ClientHttpRequestInitializer} that adds an Authorization header with a bearer token to
+ * each request. Unlike an interceptor, an initializer does not cause the request body to be
+ * buffered.
+ *
+ * <p><b>Usage:</b>
+ *
+ * <pre>
+ * RestClient restClient = RestClient.builder()
+ *         .requestInitializer(new BearerTokenRequestInitializer(accessTokenFactory))
+ *         .build();
+ * </pre>
+ */
+public class BearerTokenRequestInitializer implements ClientHttpRequestInitializer {
+    private final AccessTokenFactory accessTokenFactory;
+    private final Duration maxWait;
+
+    /**
+     * Constructs an initializer adding bearer tokens from the given factory.
+     *
+     * @param accessTokenFactory the factory providing the access token
+     */
+    public BearerTokenRequestInitializer(AccessTokenFactory accessTokenFactory) {
+        this(accessTokenFactory, null);
+    }
+
+    /**
+     * Constructs an initializer adding bearer tokens from the given factory, failing requests with
+     * {@link AccessTokenUnavailableException} if no token is available within the given time.
+     *
+     * @param accessTokenFactory the factory providing the access token
+     * @param maxWait the maximum time to wait for a token, or null to wait until it is retrieved
+     */
+    public BearerTokenRequestInitializer(AccessTokenFactory accessTokenFactory, Duration maxWait) {
+        this.accessTokenFactory = accessTokenFactory;
+        this.maxWait = maxWait;
+    }
+
+    @Override
+    public void initialize(ClientHttpRequest request) {
+        AccessTokenProcessor.setAuthorizationHeader(
+                request.getHeaders(), accessTokenFactory, maxWait);
+    }
+}
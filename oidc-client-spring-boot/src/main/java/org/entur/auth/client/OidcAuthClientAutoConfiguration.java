@@ -1,19 +1,24 @@
 package org.entur.auth.client;
 
+import java.nio.file.Path;
 import org.entur.auth.client.properties.OidcAuthClientAuth0Properties;
 import org.entur.auth.client.properties.OidcAuthClientProperties;
+import org.entur.auth.client.properties.OidcAuthClientSnapshotProperties;
 import org.entur.auth.client.properties.OidcAuthClientsProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.availability.ApplicationAvailability;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.ApplicationContext;
@@ -26,6 +31,8 @@ import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 @Configuration
+@AutoConfigureBefore(
+        name = "org.springframework.boot.health.autoconfigure.application.AvailabilityProbesAutoConfiguration")
 @EnableConfigurationProperties({OidcAuthClientsProperties.class, OidcAuthClientProperties.class})
 public class OidcAuthClientAutoConfiguration {
     private static final Logger log = LoggerFactory.getLogger(OidcAuthClientAutoConfiguration.class);
@@ -81,6 +88,23 @@ public class OidcAuthClientAutoConfiguration {
                         : oidcAuthProperties.getMaxThrottleTime());
     }
 
+    /*
+     * Creates the refresh policy of a client, or null to use the refresh thresholds.
+     */
+    private static RefreshPolicy refreshPolicy(Double refreshFraction) {
+        return refreshFraction != null ? RefreshPolicy.lifetimeFraction(refreshFraction) : null;
+    }
+
+    /*
+     * Resolves the token snapshot file of a client, or null if token snapshots are not enabled.
+     */
+    private static Path tokenSnapshotFile(OidcAuthClientSnapshotProperties snapshot, String name) {
+        if (snapshot.getDirectory() == null || snapshot.getDirectory().isBlank()) {
+            return null;
+        }
+        return Path.of(snapshot.getDirectory(), name + ".token");
+    }
+
     /*
      * Configures and returns an AccessTokenFactory bean from client configuration.
      */
@@ -91,7 +115,10 @@ public class OidcAuthClientAutoConfiguration {
             havingValue = "true",
             matchIfMissing = true)
     @ConditionalOnMissingBean(AccessTokenFactory.class)
-    public AccessTokenFactory auth0(OidcAuthClientProperties properties) {
+    public AccessTokenFactory auth0(
+            OidcAuthClientProperties properties,
+            OidcAuthClientsProperties clientsProperties,
+            ObjectProvider<TokenStore> tokenStore) {
         OidcAuthClientAuth0Properties oidcAuthProperties = properties.getAuth0();
 
         logClientConfiguration("auth0", oidcAuthProperties, null, null, null, null);
@@ -102,11 +129,68 @@ public class OidcAuthClientAutoConfiguration {
                 .withAudience(oidcAuthProperties.getAudience())
                 .withMustRefreshThreshold(oidcAuthProperties.getMustRefreshThreshold())
                 .withShouldRefreshThreshold(oidcAuthProperties.getShouldRefreshThreshold())
+                .withRefreshPolicy(refreshPolicy(oidcAuthProperties.getRefreshFraction()))
+                .withRefreshConfidence(oidcAuthProperties.getRefreshConfidence())
+                .withRefreshJitter(oidcAuthProperties.getRefreshJitter())
+                .withJwtExpiry(oidcAuthProperties.getJwtExpiry())
+                .withTrafficAwareRefresh(oidcAuthProperties.getTrafficAwareRefresh())
+                .withFetchAhead(oidcAuthProperties.getFetchAhead())
                 .withMinThrottleTime(oidcAuthProperties.getMinThrottleTime())
                 .withMaxThrottleTime(oidcAuthProperties.getMaxThrottleTime())
+                .withAuth0Sdk(oidcAuthProperties.getAuth0Sdk())
+                .withConnectTimeout(oidcAuthProperties.getConnectTimeout())
+                .withReadTimeout(oidcAuthProperties.getReadTimeout())
+                .withHttp2(oidcAuthProperties.getHttp2())
+                .withHedgeDelay(oidcAuthProperties.getHedgeDelay())
+                .withHedgePercentile(oidcAuthProperties.getHedgePercentile())
+                .withMaxHedgeRatio(oidcAuthProperties.getMaxHedgeRatio())
+                .withTokenSnapshotFile(tokenSnapshotFile(clientsProperties.getSnapshot(), "auth0"))
+                .withTokenSnapshotKey(clientsProperties.getSnapshot().getKey())
+                .withTokenStore(tokenStore.getIfAvailable())
+                .withShared(true)
                 .buildAuth0();
     }
 
+    /*
+     * Retrieves tokens for all configured clients during startup, see OidcAuthClientWarmup.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "entur.clients.warmup.enabled", havingValue = "true")
+    public OidcAuthClientWarmup oidcAuthClientWarmup(
+            ApplicationContext applicationContext, OidcAuthClientsProperties properties) {
+        return new OidcAuthClientWarmup(applicationContext, properties.getWarmup());
+    }
+
+    /*
+     * Refuses traffic while tokens which could not be retrieved during warm-up are retried, when
+     * Spring Boot health is on the classpath, see OidcAuthClientReadinessStateHealthIndicator.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.boot.health.application.ReadinessStateHealthIndicator")
+    @ConditionalOnProperty(name = "entur.clients.warmup.enabled", havingValue = "true")
+    static class WarmupReadinessConfiguration {
+        @Bean
+        @ConditionalOnMissingBean(name = "readinessStateHealthIndicator")
+        public OidcAuthClientReadinessStateHealthIndicator readinessStateHealthIndicator(
+                ApplicationAvailability availability, OidcAuthClientWarmup warmup) {
+            return new OidcAuthClientReadinessStateHealthIndicator(availability, warmup);
+        }
+    }
+
+    /*
+     * Registers metrics for all configured clients when Micrometer is on the classpath, see
+     * OidcAuthClientMetrics.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    static class MetricsConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public OidcAuthClientMetrics oidcAuthClientMetrics(ApplicationContext applicationContext) {
+            return new OidcAuthClientMetrics(applicationContext);
+        }
+    }
+
     /*
      * BeanDefinitionRegistryPostProcessor for dynamically registering beans based on clients configurations.
      */
@@ -153,18 +237,36 @@ public class OidcAuthClientAutoConfiguration {
     @Component("dynamicBeanAccessTokenFactory")
     static class DynamicBeanAccessTokenFactory {
         private final OidcAuthClientsProperties clientsProperties;
+        private final ObjectProvider<TokenStore> tokenStore;
 
-        DynamicBeanAccessTokenFactory(OidcAuthClientsProperties clientsProperties) {
+        DynamicBeanAccessTokenFactory(
+                OidcAuthClientsProperties clientsProperties, ObjectProvider<TokenStore> tokenStore) {
             this.clientsProperties = clientsProperties;
+            this.tokenStore = tokenStore;
         }
 
         AccessTokenFactory createInstance(String beanId) {
             var beanProperties = clientsProperties.getAuth0().get(beanId);
+
+            // Refresh settings of the client take precedence over the inherited alternative
+            boolean clientFraction = beanProperties.getRefreshFraction() != null;
+            boolean clientThresholds =
+                    beanProperties.getMustRefreshThreshold() != null
+                            || beanProperties.getShouldRefreshThreshold() != null;
+            Long mustRefreshThreshold =
+                    clientFraction ? null : clientsProperties.getMustRefreshThreshold();
+            Long shouldRefreshThreshold =
+                    clientFraction ? null : clientsProperties.getShouldRefreshThreshold();
+            Double refreshFraction =
+                    clientFraction
+                            ? beanProperties.getRefreshFraction()
+                            : clientThresholds ? null : clientsProperties.getRefreshFraction();
+
             logClientConfiguration(
                     beanId,
                     beanProperties,
-                    clientsProperties.getMustRefreshThreshold(),
-                    clientsProperties.getShouldRefreshThreshold(),
+                    mustRefreshThreshold,
+                    shouldRefreshThreshold,
                     clientsProperties.getMinThrottleTime(),
                     clientsProperties.getMaxThrottleTime());
 
@@ -176,11 +278,32 @@ public class OidcAuthClientAutoConfiguration {
                     .withMustRefreshThreshold(
                             beanProperties.getMustRefreshThreshold() != null
                                     ? beanProperties.getMustRefreshThreshold()
-                                    : clientsProperties.getMustRefreshThreshold())
+                                    : mustRefreshThreshold)
                     .withShouldRefreshThreshold(
                             beanProperties.getShouldRefreshThreshold() != null
                                     ? beanProperties.getShouldRefreshThreshold()
-                                    : clientsProperties.getShouldRefreshThreshold())
+                                    : shouldRefreshThreshold)
+                    .withRefreshPolicy(refreshPolicy(refreshFraction))
+                    .withRefreshConfidence(
+                            beanProperties.getRefreshConfidence() != null
+                                    ? beanProperties.getRefreshConfidence()
+                                    : clientsProperties.getRefreshConfidence())
+                    .withRefreshJitter(
+                            beanProperties.getRefreshJitter() != null
+                                    ? beanProperties.getRefreshJitter()
+                                    : clientsProperties.getRefreshJitter())
+                    .withJwtExpiry(
+                            beanProperties.getJwtExpiry() != null
+                                    ? beanProperties.getJwtExpiry()
+                                    : clientsProperties.getJwtExpiry())
+                    .withTrafficAwareRefresh(
+                            beanProperties.getTrafficAwareRefresh() != null
+                                    ? beanProperties.getTrafficAwareRefresh()
+                                    : clientsProperties.getTrafficAwareRefresh())
+                    .withFetchAhead(
+                            beanProperties.getFetchAhead() != null
+                                    ? beanProperties.getFetchAhead()
+                                    : clientsProperties.getFetchAhead())
                     .withMinThrottleTime(
                             beanProperties.getMinThrottleTime() != null
                                     ? beanProperties.getMinThrottleTime()
@@ -189,6 +312,38 @@ public class OidcAuthClientAutoConfiguration {
                             beanProperties.getMaxThrottleTime() != null
                                     ? beanProperties.getMaxThrottleTime()
                                     : clientsProperties.getMaxThrottleTime())
+                    .withAuth0Sdk(
+                            beanProperties.getAuth0Sdk() != null
+                                    ? beanProperties.getAuth0Sdk()
+                                    : clientsProperties.getAuth0Sdk())
+                    .withConnectTimeout(
+                            beanProperties.getConnectTimeout() != null
+                                    ? beanProperties.getConnectTimeout()
+                                    : clientsProperties.getConnectTimeout())
+                    .withReadTimeout(
+                            beanProperties.getReadTimeout() != null
+                                    ? beanProperties.getReadTimeout()
+                                    : clientsProperties.getReadTimeout())
+                    .withHttp2(
+                            beanProperties.getHttp2() != null
+                                    ? beanProperties.getHttp2()
+                                    : clientsProperties.getHttp2())
+                    .withHedgeDelay(
+                            beanProperties.getHedgeDelay() != null
+                                    ? beanProperties.getHedgeDelay()
+                                    : clientsProperties.getHedgeDelay())
+                    .withHedgePercentile(
+                            beanProperties.getHedgePercentile() != null
+                                    ? beanProperties.getHedgePercentile()
+                                    : clientsProperties.getHedgePercentile())
+                    .withMaxHedgeRatio(
+                            beanProperties.getMaxHedgeRatio() != null
+                                    ? beanProperties.getMaxHedgeRatio()
+                                    : clientsProperties.getMaxHedgeRatio())
+                    .withTokenSnapshotFile(tokenSnapshotFile(clientsProperties.getSnapshot(), beanId))
+                    .withTokenSnapshotKey(clientsProperties.getSnapshot().getKey())
+                    .withTokenStore(tokenStore.getIfAvailable())
+                    .withShared(true)
                     .buildAuth0();
         }
     }
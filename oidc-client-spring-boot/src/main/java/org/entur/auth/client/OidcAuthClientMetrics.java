@@ -0,0 +1,163 @@
+package org.entur.auth.client;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Registers Micrometer meters for all {@link AccessTokenFactory} beans, tagged with the bean name
+ * of the client:
+ *
+ * <ul>
+ *   <li>{@code oidc.client.token.fetch}: latency histogram of token requests, by outcome,
+ *   <li>{@code oidc.client.token.refresh}: refreshes started, by cause,
+ *   <li>{@code oidc.client.token.failures}: failed token requests, by exception,
+ *   <li>{@code oidc.client.token.backoff}: time until a failed token request is retried,
+ *   <li>{@code oidc.client.token.remaining.lifetime}: time until the current token expires,
+ *   <li>{@code oidc.client.token.blocking.wait}: callers waiting for a token,
+ *   <li>{@code oidc.client.token.cache}: calls served by the cached token, by result.
+ * </ul>
+ *
+ * <p>Meters are only updated when tokens are retrieved or callers wait for them, while cache hits
+ * are counted by the factory and read when the registry is published. A factory shared by several
+ * beans is tagged with the name of the first of them.
+ *
+ * <p>Factories may be shared with other application contexts, so the listeners added to them are
+ * removed when this context is closed.
+ */
+public class OidcAuthClientMetrics implements MeterBinder, DisposableBean {
+    static final String FETCH = "oidc.client.token.fetch";
+    static final String REFRESH = "oidc.client.token.refresh";
+    static final String FAILURES = "oidc.client.token.failures";
+    static final String BACKOFF = "oidc.client.token.backoff";
+    static final String REMAINING_LIFETIME = "oidc.client.token.remaining.lifetime";
+    static final String BLOCKING_WAIT = "oidc.client.token.blocking.wait";
+    static final String CACHE = "oidc.client.token.cache";
+
+    private final ApplicationContext applicationContext;
+    private final Map<MeterListener, AccessTokenFactory> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an instance of {@code OidcAuthClientMetrics}.
+     *
+     * @param applicationContext the application context, used to find the configured clients
+     */
+    public OidcAuthClientMetrics(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // A shared factory may be exposed under several bean names, bind it once
+        Set<AccessTokenFactory> bound = Collections.newSetFromMap(new IdentityHashMap<>());
+        applicationContext
+                .getBeansOfType(AccessTokenFactory.class)
+                .forEach(
+                        (name, factory) -> {
+                            if (bound.add(factory)) {
+                                bindTo(registry, name, factory);
+                            }
+                        });
+    }
+
+    @Override
+    public void destroy() {
+        listeners.forEach((listener, factory) -> factory.removeListener(listener));
+        listeners.clear();
+    }
+
+    private void bindTo(MeterRegistry registry, String name, AccessTokenFactory factory) {
+        Tags tags = Tags.of("client", name);
+
+        TimeGauge.builder(
+                        BACKOFF, factory, TimeUnit.MILLISECONDS, AccessTokenFactory::getBackoffTime)
+                .tags(tags)
+                .description("Time until a failed token request is retried")
+                .register(registry);
+        TimeGauge.builder(
+                        REMAINING_LIFETIME,
+                        factory,
+                        TimeUnit.MILLISECONDS,
+                        AccessTokenFactory::getRemainingLifetime)
+                .tags(tags)
+                .description("Time until the current token expires")
+                .register(registry);
+        FunctionCounter.builder(CACHE, factory, AccessTokenFactory::getCacheHits)
+                .tags(tags)
+                .tag("result", "hit")
+                .description("Calls served by the cached token")
+                .register(registry);
+        FunctionCounter.builder(CACHE, factory, AccessTokenFactory::getCacheMisses)
+                .tags(tags)
+                .tag("result", "miss")
+                .description("Calls finding the token in need of a refresh")
+                .register(registry);
+
+        MeterListener listener = new MeterListener(registry, tags);
+        listeners.put(listener, factory);
+        factory.addListener(listener);
+    }
+
+    /** Records the events of one client. */
+    private static final class MeterListener implements AccessTokenListener {
+        private final MeterRegistry registry;
+        private final Tags tags;
+        private final Timer fetched;
+        private final Timer blockingWait;
+
+        private MeterListener(MeterRegistry registry, Tags tags) {
+            this.registry = registry;
+            this.tags = tags;
+            this.fetched = fetchTimer(registry, tags, "success");
+            this.blockingWait =
+                    Timer.builder(BLOCKING_WAIT)
+                            .tags(tags)
+                            .description("Callers waiting for a token to be retrieved")
+                            .register(registry);
+        }
+
+        private static Timer fetchTimer(MeterRegistry registry, Tags tags, String outcome) {
+            return Timer.builder(FETCH)
+                    .tags(tags)
+                    .tag("outcome", outcome)
+                    .description("Latency of token requests to the authorization server")
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+
+        @Override
+        public void refreshStarted(RefreshCause cause) {
+            registry.counter(REFRESH, tags.and("cause", cause.name().toLowerCase(Locale.ROOT)))
+                    .increment();
+        }
+
+        @Override
+        public void tokenFetched(long durationNanos) {
+            fetched.record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void tokenFetchFailed(long durationNanos, Exception cause) {
+            fetchTimer(registry, tags, "failure").record(durationNanos, TimeUnit.NANOSECONDS);
+            registry.counter(FAILURES, tags.and("cause", cause.getClass().getSimpleName()))
+                    .increment();
+        }
+
+        @Override
+        public void blockingWaitCompleted(long durationNanos) {
+            blockingWait.record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.entur.auth.client;
+
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.AvailabilityState;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.health.application.ReadinessStateHealthIndicator;
+
+/**
+ * Readiness health indicator reporting {@link ReadinessState#REFUSING_TRAFFIC} while tokens which
+ * could not be retrieved by the {@link OidcAuthClientWarmup} are retried, and the readiness state
+ * of the application otherwise.
+ *
+ * <p>Registered as {@code readinessStateHealthIndicator} when warm-up is enabled, in place of the
+ * indicator of Spring Boot, so the readiness probe includes it without further configuration. The
+ * readiness state of the application itself is left to Spring Boot.
+ */
+public class OidcAuthClientReadinessStateHealthIndicator extends ReadinessStateHealthIndicator {
+    private final OidcAuthClientWarmup warmup;
+
+    /**
+     * Constructs an instance of {@code OidcAuthClientReadinessStateHealthIndicator}.
+     *
+     * @param availability the availability of the application
+     * @param warmup the warm-up of the configured clients
+     */
+    public OidcAuthClientReadinessStateHealthIndicator(
+            ApplicationAvailability availability, OidcAuthClientWarmup warmup) {
+        super(availability);
+        this.warmup = warmup;
+    }
+
+    @Override
+    protected AvailabilityState getState(ApplicationAvailability applicationAvailability) {
+        if (!warmup.getPendingClients().isEmpty()) {
+            return ReadinessState.REFUSING_TRAFFIC;
+        }
+        return super.getState(applicationAvailability);
+    }
+}
@@ -0,0 +1,174 @@
+package org.entur.auth.client;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.entur.auth.client.properties.OidcAuthClientWarmupProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * Retrieves tokens for all {@link AccessTokenFactory} beans in parallel during application startup,
+ * so the first requests to each downstream service do not have to wait for the authorization
+ * server.
+ *
+ * <p>The warm-up runs in the last lifecycle phase, with at most {@code concurrency} token requests
+ * in flight and a total deadline of {@code timeout} seconds. Tokens are retrieved without blocking
+ * on the refresh of the factories, so a warm-up giving up does not affect other callers. If any
+ * token could not be retrieved in time, startup either fails or continues. In the latter case the
+ * remaining tokens are retried in the background, and {@link
+ * OidcAuthClientReadinessStateHealthIndicator} reports {@link ReadinessState#REFUSING_TRAFFIC}
+ * until they have been retrieved.
+ */
+public class OidcAuthClientWarmup implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(OidcAuthClientWarmup.class);
+
+    private static final long RETRY_INTERVAL = 1000; // Milliseconds
+
+    private final ApplicationContext applicationContext;
+    private final OidcAuthClientWarmupProperties properties;
+    private volatile boolean running;
+
+    // Factories where no token was retrieved during the warm-up, by bean name
+    private volatile Map<String, AccessTokenFactory> pending = Map.of();
+
+    /**
+     * Constructs an instance of {@code OidcAuthClientWarmup}.
+     *
+     * @param applicationContext the application context, used to find the configured clients
+     * @param properties the warm-up configuration
+     */
+    public OidcAuthClientWarmup(
+            ApplicationContext applicationContext, OidcAuthClientWarmupProperties properties) {
+        this.applicationContext = applicationContext;
+        this.properties = properties;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+
+        Map<String, AccessTokenFactory> factories =
+                applicationContext.getBeansOfType(AccessTokenFactory.class);
+        if (factories.isEmpty()) {
+            return;
+        }
+
+        List<String> failed = warmup(factories);
+        if (failed.isEmpty()) {
+            log.info("Retrieved access tokens for clients: {}", factories.keySet());
+        } else if (properties.getFailOnError()) {
+            throw new IllegalStateException("Unable to retrieve access tokens for clients: " + failed);
+        } else {
+            log.warn(
+                    "Unable to retrieve access tokens for clients: {}, refusing traffic until retrieved",
+                    failed);
+            Map<String, AccessTokenFactory> remaining = new LinkedHashMap<>();
+            failed.forEach(name -> remaining.put(name, factories.get(name)));
+            pending = remaining;
+            CompletableFuture.allOf(
+                            remaining.values().stream()
+                                    .map(this::retrieve)
+                                    .toArray(CompletableFuture[]::new))
+                    .thenRun(
+                            () -> {
+                                log.info("Retrieved access tokens for clients: {}", remaining.keySet());
+                                pending = Map.of();
+                            });
+        }
+    }
+
+    /**
+     * Gets the clients where no token has been retrieved since the warm-up failed.
+     *
+     * @return bean names of the clients, empty when all tokens have been retrieved
+     */
+    public Set<String> getPendingClients() {
+        return pending.keySet();
+    }
+
+    /**
+     * Retrieves a token in the background, retrying until it is retrieved or the application stops.
+     *
+     * @param factory the factory
+     * @return a future completed with the token
+     */
+    private CompletableFuture<String> retrieve(AccessTokenFactory factory) {
+        return factory.getAccessTokenAsync()
+                .exceptionallyCompose(
+                        ex -> {
+                            if (!running) {
+                                return CompletableFuture.failedFuture(ex);
+                            }
+                            Executor delayed =
+                                    CompletableFuture.delayedExecutor(
+                                            RETRY_INTERVAL, TimeUnit.MILLISECONDS);
+                            return CompletableFuture.supplyAsync(() -> factory, delayed)
+                                    .thenCompose(this::retrieve);
+                        });
+    }
+
+    /**
+     * Retrieves tokens for the given factories in parallel. The refreshes are run by the factories,
+     * and keep running if the deadline passes.
+     *
+     * @param factories the factories by bean name
+     * @return bean names of the factories where no token was retrieved before the deadline
+     */
+    private List<String> warmup(Map<String, AccessTokenFactory> factories) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(properties.getTimeout());
+        Semaphore permits = new Semaphore(Math.max(1, properties.getConcurrency()));
+
+        Map<String, CompletableFuture<String>> results = new LinkedHashMap<>();
+        try {
+            for (var entry : factories.entrySet()) {
+                if (!permits.tryAcquire(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                    break;
+                }
+                CompletableFuture<String> result = entry.getValue().getAccessTokenAsync();
+                result.whenComplete((token, ex) -> permits.release());
+                results.put(entry.getKey(), result);
+            }
+            CompletableFuture.allOf(results.values().toArray(CompletableFuture[]::new))
+                    .get(remaining(deadline), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException | TimeoutException ex) {
+            // Failed and unfinished tokens are reported below
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<String> failed = new ArrayList<>();
+        for (String name : factories.keySet()) {
+            CompletableFuture<String> result = results.get(name);
+            if (result == null || !result.isDone() || result.isCompletedExceptionally()) {
+                failed.add(name);
+            }
+        }
+        return failed;
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+}
@@ -11,9 +11,30 @@ public final class OidcAuthClientAuth0Properties {
     private Long mustRefreshThreshold;
     private Long shouldRefreshThreshold;
 
+    private Double refreshFraction;
+    private Double refreshConfidence;
+    private Double refreshJitter;
+
+    private Boolean jwtExpiry;
+
+    private Boolean trafficAwareRefresh;
+    private Boolean fetchAhead;
+
     private Long minThrottleTime;
     private Long maxThrottleTime;
 
+    private Boolean auth0Sdk;
+
+    private Long connectTimeout;
+    private Long readTimeout;
+    private Boolean http2;
+
+    private Long hedgeDelay;
+    private Double hedgePercentile;
+    private Double maxHedgeRatio;
+
+    private Long maxWait;
+
     public boolean getEnabled() {
         return enabled;
     }
@@ -85,4 +106,116 @@ public final class OidcAuthClientAuth0Properties {
     public void setMaxThrottleTime(Long maxThrottleTime) {
         this.maxThrottleTime = maxThrottleTime;
     }
+
+    public Boolean getAuth0Sdk() {
+        return auth0Sdk;
+    }
+
+    public void setAuth0Sdk(Boolean auth0Sdk) {
+        this.auth0Sdk = auth0Sdk;
+    }
+
+    public Long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public void setHedgeDelay(Long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    public Double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(Double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public Double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    public void setMaxHedgeRatio(Double maxHedgeRatio) {
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    public Long getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public Double getRefreshFraction() {
+        return refreshFraction;
+    }
+
+    public void setRefreshFraction(Double refreshFraction) {
+        this.refreshFraction = refreshFraction;
+    }
+
+    public Double getRefreshConfidence() {
+        return refreshConfidence;
+    }
+
+    public void setRefreshConfidence(Double refreshConfidence) {
+        this.refreshConfidence = refreshConfidence;
+    }
+
+    public Double getRefreshJitter() {
+        return refreshJitter;
+    }
+
+    public void setRefreshJitter(Double refreshJitter) {
+        this.refreshJitter = refreshJitter;
+    }
+
+    public Boolean getJwtExpiry() {
+        return jwtExpiry;
+    }
+
+    public void setJwtExpiry(Boolean jwtExpiry) {
+        this.jwtExpiry = jwtExpiry;
+    }
+
+    public Boolean getTrafficAwareRefresh() {
+        return trafficAwareRefresh;
+    }
+
+    public void setTrafficAwareRefresh(Boolean trafficAwareRefresh) {
+        this.trafficAwareRefresh = trafficAwareRefresh;
+    }
+
+    public Boolean getFetchAhead() {
+        return fetchAhead;
+    }
+
+    public void setFetchAhead(Boolean fetchAhead) {
+        this.fetchAhead = fetchAhead;
+    }
+
+    public Long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(Long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public Long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(Long readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public Boolean getHttp2() {
+        return http2;
+    }
+
+    public void setHttp2(Boolean http2) {
+        this.http2 = http2;
+    }
 }
@@ -0,0 +1,22 @@
+package org.entur.auth.client.properties;
+
+public final class OidcAuthClientSnapshotProperties {
+    private String directory;
+    private String key;
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+}
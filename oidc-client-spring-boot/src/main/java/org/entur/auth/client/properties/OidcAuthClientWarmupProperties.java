@@ -0,0 +1,41 @@
+package org.entur.auth.client.properties;
+
+public final class OidcAuthClientWarmupProperties {
+    private boolean enabled = false;
+
+    private Integer concurrency = 4;
+    private Long timeout = 30L;
+    private boolean failOnError = false;
+
+    public boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Integer getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(Integer concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
+    public boolean getFailOnError() {
+        return failOnError;
+    }
+
+    public void setFailOnError(boolean failOnError) {
+        this.failOnError = failOnError;
+    }
+}
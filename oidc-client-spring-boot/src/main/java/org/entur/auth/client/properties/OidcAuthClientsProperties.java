@@ -11,11 +11,36 @@ public class OidcAuthClientsProperties {
     protected Long mustRefreshThreshold;
     protected Long shouldRefreshThreshold;
 
+    protected Double refreshFraction;
+    protected Double refreshConfidence;
+    protected Double refreshJitter;
+
+    protected Boolean jwtExpiry;
+
+    protected Boolean trafficAwareRefresh;
+    protected Boolean fetchAhead;
+
     protected Long minThrottleTime = 1L;
     protected Long maxThrottleTime = 600L;
 
+    protected Boolean auth0Sdk;
+
+    protected Long connectTimeout;
+    protected Long readTimeout;
+    protected Boolean http2;
+
+    protected Long hedgeDelay;
+    protected Double hedgePercentile;
+    protected Double maxHedgeRatio;
+
+    protected Long maxWait;
+
     private Map<String, OidcAuthClientAuth0Properties> auth0 = new HashMap<>();
 
+    private OidcAuthClientWarmupProperties warmup = new OidcAuthClientWarmupProperties();
+
+    private OidcAuthClientSnapshotProperties snapshot = new OidcAuthClientSnapshotProperties();
+
     public void setAuth0(Map<String, OidcAuthClientAuth0Properties> auth0) {
         this.auth0 = auth0;
     }
@@ -24,6 +49,22 @@ public class OidcAuthClientsProperties {
         return auth0;
     }
 
+    public OidcAuthClientWarmupProperties getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(OidcAuthClientWarmupProperties warmup) {
+        this.warmup = warmup;
+    }
+
+    public OidcAuthClientSnapshotProperties getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(OidcAuthClientSnapshotProperties snapshot) {
+        this.snapshot = snapshot;
+    }
+
     public void setMustRefreshThreshold(Long mustRefreshThreshold) {
         this.mustRefreshThreshold = mustRefreshThreshold;
     }
@@ -32,6 +73,30 @@ public class OidcAuthClientsProperties {
         this.shouldRefreshThreshold = shouldRefreshThreshold;
     }
 
+    public void setRefreshFraction(Double refreshFraction) {
+        this.refreshFraction = refreshFraction;
+    }
+
+    public void setRefreshConfidence(Double refreshConfidence) {
+        this.refreshConfidence = refreshConfidence;
+    }
+
+    public void setRefreshJitter(Double refreshJitter) {
+        this.refreshJitter = refreshJitter;
+    }
+
+    public void setJwtExpiry(Boolean jwtExpiry) {
+        this.jwtExpiry = jwtExpiry;
+    }
+
+    public void setTrafficAwareRefresh(Boolean trafficAwareRefresh) {
+        this.trafficAwareRefresh = trafficAwareRefresh;
+    }
+
+    public void setFetchAhead(Boolean fetchAhead) {
+        this.fetchAhead = fetchAhead;
+    }
+
     public void setMinThrottleTime(Long minThrottleTime) {
         this.minThrottleTime = minThrottleTime;
     }
@@ -40,6 +105,38 @@ public class OidcAuthClientsProperties {
         this.maxThrottleTime = maxThrottleTime;
     }
 
+    public void setAuth0Sdk(Boolean auth0Sdk) {
+        this.auth0Sdk = auth0Sdk;
+    }
+
+    public void setConnectTimeout(Long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setReadTimeout(Long readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public void setHttp2(Boolean http2) {
+        this.http2 = http2;
+    }
+
+    public void setHedgeDelay(Long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    public void setHedgePercentile(Double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public void setMaxHedgeRatio(Double maxHedgeRatio) {
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    public void setMaxWait(Long maxWait) {
+        this.maxWait = maxWait;
+    }
+
     public Long getMustRefreshThreshold() {
         return mustRefreshThreshold;
     }
@@ -48,6 +145,30 @@ public class OidcAuthClientsProperties {
         return shouldRefreshThreshold;
     }
 
+    public Double getRefreshFraction() {
+        return refreshFraction;
+    }
+
+    public Double getRefreshConfidence() {
+        return refreshConfidence;
+    }
+
+    public Double getRefreshJitter() {
+        return refreshJitter;
+    }
+
+    public Boolean getJwtExpiry() {
+        return jwtExpiry;
+    }
+
+    public Boolean getTrafficAwareRefresh() {
+        return trafficAwareRefresh;
+    }
+
+    public Boolean getFetchAhead() {
+        return fetchAhead;
+    }
+
     public Long getMinThrottleTime() {
         return minThrottleTime;
     }
@@ -55,4 +176,36 @@ public class OidcAuthClientsProperties {
     public Long getMaxThrottleTime() {
         return maxThrottleTime;
     }
+
+    public Boolean getAuth0Sdk() {
+        return auth0Sdk;
+    }
+
+    public Long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Long getReadTimeout() {
+        return readTimeout;
+    }
+
+    public Boolean getHttp2() {
+        return http2;
+    }
+
+    public Long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    public Double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public Double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    public Long getMaxWait() {
+        return maxWait;
+    }
 }
@@ -2,6 +2,9 @@ package org.entur.auth.client;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.Duration;
+import org.entur.auth.client.auth0.Auth0AccessTokenClient;
+import org.entur.auth.client.oidc.OidcAccessTokenClient;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,6 +13,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.context.ApplicationContext;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
@@ -30,7 +34,10 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
             "entur.clients.auth0.two.mustRefreshThreshold=60",
             "entur.clients.auth0.two.shouldRefreshThreshold=120",
             "entur.clients.auth0.two.minThrottleTime=3",
-            "entur.clients.auth0.two.maxThrottleTime=450"
+            "entur.clients.auth0.two.maxThrottleTime=450",
+            "entur.clients.auth0.two.auth0Sdk=false",
+            "entur.clients.auth0.two.maxWait=200",
+            "entur.clients.maxWait=500"
         })
 @ExtendWith(SpringExtension.class)
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
@@ -45,6 +52,8 @@ public class Auth0MultipleClientsConfigurationTest {
     @Qualifier("two")
     private AccessTokenFactory accessTokenFactory2;
 
+    @Autowired private ApplicationContext applicationContext;
+
     @LocalServerPort private int randomServerPort;
 
     @Test
@@ -53,10 +62,17 @@ public class Auth0MultipleClientsConfigurationTest {
         assertThat(accessTokenFactory1.getShouldRefreshThreshold()).isEqualTo(30);
         assertThat(accessTokenFactory1.getMinThrottleTime()).isEqualTo(2);
         assertThat(accessTokenFactory1.getMaxThrottleTime()).isEqualTo(300);
+        assertThat(accessTokenFactory1.getClient()).isInstanceOf(Auth0AccessTokenClient.class);
 
         assertThat(accessTokenFactory2.getMustRefreshThreshold()).isEqualTo(60);
         assertThat(accessTokenFactory2.getShouldRefreshThreshold()).isEqualTo(120);
         assertThat(accessTokenFactory2.getMinThrottleTime()).isEqualTo(3);
         assertThat(accessTokenFactory2.getMaxThrottleTime()).isEqualTo(450);
+        assertThat(accessTokenFactory2.getClient()).isInstanceOf(OidcAccessTokenClient.class);
+
+        assertThat(AccessTokenProcessor.getMaxWait(applicationContext, "one"))
+                .isEqualTo(Duration.ofMillis(500));
+        assertThat(AccessTokenProcessor.getMaxWait(applicationContext, "two"))
+                .isEqualTo(Duration.ofMillis(200));
     }
 }
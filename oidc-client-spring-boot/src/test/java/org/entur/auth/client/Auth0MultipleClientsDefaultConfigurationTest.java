@@ -24,6 +24,11 @@ import org.springframework.test.context.junit.jupiter.SpringExtension;
             "entur.clients.auth0.two.secret=aaa",
             "entur.clients.auth0.two.domain=partner-entur-dev.eu.auth0.com",
             "entur.clients.auth0.two.audience=https://dev.devstage.entur.io",
+            "entur.clients.auth0.three.clientId=bbb",
+            "entur.clients.auth0.three.secret=ccc",
+            "entur.clients.auth0.three.domain=partner-entur-dev.eu.auth0.com",
+            "entur.clients.auth0.three.audience=https://dev.devstage.entur.io",
+            "entur.clients.auth0.three.refreshFraction=0.75",
             "entur.clients.mustRefreshThreshold=60",
             "entur.clients.shouldRefreshThreshold=120",
             "entur.clients.minThrottleTime=2",
@@ -42,6 +47,10 @@ public class Auth0MultipleClientsDefaultConfigurationTest {
     @Qualifier("two")
     private AccessTokenFactory accessTokenFactory2;
 
+    @Autowired
+    @Qualifier("three")
+    private AccessTokenFactory accessTokenFactory3;
+
     @LocalServerPort private int randomServerPort;
 
     @Test
@@ -56,4 +65,12 @@ public class Auth0MultipleClientsDefaultConfigurationTest {
         assertThat(accessTokenFactory2.getMinThrottleTime()).isEqualTo(2);
         assertThat(accessTokenFactory2.getMaxThrottleTime()).isEqualTo(300);
     }
+
+    @Test
+    public void testClientRefreshFractionTakesPrecedenceOverDefaultThresholds() {
+        assertThat(accessTokenFactory1.getRefreshPolicy()).isEqualTo(RefreshPolicy.fixed(120, 60));
+        assertThat(accessTokenFactory3.getRefreshPolicy())
+                .isEqualTo(RefreshPolicy.lifetimeFraction(0.75));
+        assertThat(accessTokenFactory3.getMinThrottleTime()).isEqualTo(2);
+    }
 }
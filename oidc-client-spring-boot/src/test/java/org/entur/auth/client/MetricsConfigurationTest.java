@@ -0,0 +1,105 @@
+package org.entur.auth.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+@TestPropertySource(
+        properties = {
+            "entur.client.auth0.clientId=xxx",
+            "entur.client.auth0.secret=yyy",
+            "entur.client.auth0.domain=internal-entur-dev.eu.auth0.com",
+            "entur.client.auth0.audience=https://dev.devstage.entur.io"
+        })
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+public class MetricsConfigurationTest {
+
+    @Autowired private OidcAuthClientMetrics metrics;
+
+    @Test
+    public void testMetersAreTaggedWithClient() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+
+        assertNotNull(
+                registry.find(OidcAuthClientMetrics.REMAINING_LIFETIME)
+                        .tag("client", "auth0")
+                        .timeGauge());
+        assertNotNull(
+                registry.find(OidcAuthClientMetrics.BACKOFF).tag("client", "auth0").timeGauge());
+        assertNotNull(
+                registry.find(OidcAuthClientMetrics.FETCH)
+                        .tags("client", "auth0", "outcome", "success")
+                        .timer());
+        assertEquals(
+                0,
+                registry.get(OidcAuthClientMetrics.CACHE)
+                        .tags("client", "auth0", "result", "hit")
+                        .functionCounter()
+                        .count());
+    }
+
+    @Test
+    public void testSharedFactoryIsBoundOnce() {
+        AccessTokenFactory factory = new AccessTokenFactory(mock(AccessTokenClient.class));
+        Map<String, AccessTokenFactory> beans = new LinkedHashMap<>();
+        beans.put("one", factory);
+        beans.put("two", factory);
+        ApplicationContext context = mock(ApplicationContext.class);
+        when(context.getBeansOfType(AccessTokenFactory.class)).thenReturn(beans);
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        new OidcAuthClientMetrics(context).bindTo(registry);
+
+        assertNotNull(
+                registry.find(OidcAuthClientMetrics.REMAINING_LIFETIME)
+                        .tag("client", "one")
+                        .timeGauge());
+        assertNull(
+                registry.find(OidcAuthClientMetrics.REMAINING_LIFETIME)
+                        .tag("client", "two")
+                        .timeGauge());
+    }
+
+    @Test
+    public void testListenersAreRemovedWhenContextCloses() throws Exception {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        TokenHolder tokenHolder = mock(TokenHolder.class);
+        when(tokenHolder.getAccessToken()).thenReturn("token");
+        when(tokenHolder.getExpiresIn()).thenReturn(300L);
+        when(client.requestAccessToken()).thenReturn(tokenHolder);
+        AccessTokenFactory factory = new AccessTokenFactory(client);
+        ApplicationContext context = mock(ApplicationContext.class);
+        when(context.getBeansOfType(AccessTokenFactory.class)).thenReturn(Map.of("one", factory));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OidcAuthClientMetrics closed = new OidcAuthClientMetrics(context);
+        closed.bindTo(registry);
+        closed.destroy();
+        factory.getAccessToken();
+
+        assertEquals(
+                0,
+                registry.get(OidcAuthClientMetrics.FETCH)
+                        .tags("client", "one", "outcome", "success")
+                        .timer()
+                        .count());
+    }
+}
@@ -1,17 +1,27 @@
 package org.entur.auth.client;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.client.MockClientHttpRequest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
@@ -28,4 +38,36 @@ class MockConfigurationTest {
 
         assertNotNull(accessTokenFactory.getAccessToken());
     }
+
+    @Test
+    void testRequestInitializerUsesAuthorizationHeader() {
+        when(accessTokenFactory.getAuthorizationHeader()).thenReturn("Bearer ABC");
+
+        MockClientHttpRequest request =
+                new MockClientHttpRequest(HttpMethod.GET, URI.create("http://localhost"));
+        new BearerTokenRequestInitializer(accessTokenFactory).initialize(request);
+
+        assertEquals("Bearer ABC", request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION));
+    }
+
+    @Test
+    void testExchangeFilterFunctionUsesAuthorizationHeader() {
+        when(accessTokenFactory.getAuthorizationHeaderAsync())
+                .thenReturn(CompletableFuture.completedFuture("Bearer ABC"));
+
+        AtomicReference<ClientRequest> exchanged = new AtomicReference<>();
+        ClientRequest request =
+                ClientRequest.create(HttpMethod.GET, URI.create("http://localhost")).build();
+        new BearerTokenExchangeFilterFunction(accessTokenFactory)
+                .filter(
+                        request,
+                        next -> {
+                            exchanged.set(next);
+                            return Mono.<ClientResponse>empty();
+                        })
+                .block();
+
+        assertEquals(
+                "Bearer ABC", exchanged.get().headers().getFirst(HttpHeaders.AUTHORIZATION));
+    }
 }
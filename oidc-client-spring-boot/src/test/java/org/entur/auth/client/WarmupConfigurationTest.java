@@ -0,0 +1,156 @@
+package org.entur.auth.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.entur.auth.client.properties.OidcAuthClientWarmupProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ApplicationAvailabilityBean;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.health.application.ReadinessStateHealthIndicator;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+@TestPropertySource(
+        properties = {
+            "entur.clients.warmup.enabled=true",
+            "entur.clients.warmup.concurrency=2",
+            "entur.clients.warmup.timeout=5"
+        })
+@ExtendWith(SpringExtension.class)
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+public class WarmupConfigurationTest {
+
+    @Autowired
+    @Qualifier("warmupClient")
+    private AccessTokenFactory accessTokenFactory;
+
+    @Autowired private OidcAuthClientWarmup warmup;
+
+    @Autowired private ReadinessStateHealthIndicator readinessStateHealthIndicator;
+
+    @TestConfiguration
+    static class WarmupClientConfiguration {
+        @Bean
+        AccessTokenFactory warmupClient() {
+            AccessTokenFactory factory = mock(AccessTokenFactory.class);
+            when(factory.getAccessTokenAsync())
+                    .thenReturn(CompletableFuture.completedFuture("token"));
+            return factory;
+        }
+    }
+
+    @Test
+    public void testWarmup() {
+        assertNotNull(warmup);
+        verify(accessTokenFactory, times(1)).getAccessTokenAsync();
+        verify(accessTokenFactory, never()).getAccessToken();
+        assertEquals(Set.of(), warmup.getPendingClients());
+        assertInstanceOf(
+                OidcAuthClientReadinessStateHealthIndicator.class, readinessStateHealthIndicator);
+    }
+
+    @Test
+    public void testFailedWarmupRefusesTrafficUntilTokenIsRetrieved() throws Exception {
+        AccessTokenFactory factory = mock(AccessTokenFactory.class);
+        when(factory.getAccessTokenAsync())
+                .thenReturn(CompletableFuture.failedFuture(new AccessTokenUnavailableException()))
+                .thenReturn(CompletableFuture.failedFuture(new AccessTokenUnavailableException()))
+                .thenReturn(CompletableFuture.completedFuture("token"));
+
+        try (GenericApplicationContext context = new GenericApplicationContext()) {
+            context.registerBean(ApplicationAvailabilityBean.class);
+            context.registerBean("client", AccessTokenFactory.class, () -> factory);
+            context.registerBean(
+                    OidcAuthClientWarmup.class,
+                    () -> new OidcAuthClientWarmup(context, properties(5, false)));
+            context.refresh();
+
+            // Spring Boot accepts traffic once the application is ready
+            AvailabilityChangeEvent.publish(context, ReadinessState.ACCEPTING_TRAFFIC);
+            ApplicationAvailability availability = context.getBean(ApplicationAvailability.class);
+            OidcAuthClientWarmup failed = context.getBean(OidcAuthClientWarmup.class);
+            OidcAuthClientReadinessStateHealthIndicator readiness =
+                    new OidcAuthClientReadinessStateHealthIndicator(availability, failed);
+            assertEquals(Set.of("client"), failed.getPendingClients());
+            assertEquals(ReadinessState.REFUSING_TRAFFIC, readiness.getState(availability));
+            assertEquals(ReadinessState.ACCEPTING_TRAFFIC, availability.getReadinessState());
+
+            // The token is retried in the background, and traffic accepted once it is retrieved
+            for (int i = 0; i < 50 && !failed.getPendingClients().isEmpty(); i++) {
+                Thread.sleep(100);
+            }
+            assertEquals(Set.of(), failed.getPendingClients());
+            assertEquals(ReadinessState.ACCEPTING_TRAFFIC, readiness.getState(availability));
+            verify(factory, times(3)).getAccessTokenAsync();
+            verify(factory, never()).getAccessToken();
+        }
+    }
+
+    @Test
+    public void testFailedWarmupFailsStartup() {
+        AccessTokenFactory factory = mock(AccessTokenFactory.class);
+        when(factory.getAccessTokenAsync())
+                .thenReturn(CompletableFuture.failedFuture(new AccessTokenUnavailableException()));
+
+        try (GenericApplicationContext context = new GenericApplicationContext()) {
+            context.registerBean("client", AccessTokenFactory.class, () -> factory);
+            context.refresh();
+
+            OidcAuthClientWarmup failing = new OidcAuthClientWarmup(context, properties(5, true));
+            assertThrows(IllegalStateException.class, failing::start);
+        }
+    }
+
+    @Test
+    public void testWarmupGivesUpAtDeadline() {
+        AccessTokenFactory factory = mock(AccessTokenFactory.class);
+        CompletableFuture<String> refresh = new CompletableFuture<>();
+        when(factory.getAccessTokenAsync()).thenReturn(refresh);
+
+        try (GenericApplicationContext context = new GenericApplicationContext()) {
+            context.registerBean("client", AccessTokenFactory.class, () -> factory);
+            context.refresh();
+
+            OidcAuthClientWarmup hanging = new OidcAuthClientWarmup(context, properties(1, true));
+            long start = System.nanoTime();
+            assertThrows(IllegalStateException.class, hanging::start);
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+            // The refresh is owned by the factory, and is not cancelled by the warm-up
+            assertFalse(refresh.isDone());
+        }
+    }
+
+    private static OidcAuthClientWarmupProperties properties(long timeout, boolean failOnError) {
+        OidcAuthClientWarmupProperties properties = new OidcAuthClientWarmupProperties();
+        properties.setEnabled(true);
+        properties.setTimeout(timeout);
+        properties.setFailOnError(failOnError);
+        return properties;
+    }
+}
@@ -16,6 +16,33 @@ public interface AccessTokenClient {
      */
     TokenHolder requestAccessToken() throws IOException;
 
+    /**
+     * Requests an access token for another audience or other scopes than the defaults of the client,
+     * using the same credentials.
+     *
+     * @param audience the audience of the token, or null for the default audience
+     * @param scope space separated scopes, or null for the default scopes
+     * @return an object holding information about the token.
+     * @throws IOException when authorization server not responding
+     * @throws UnsupportedOperationException if the client does not support other audiences or scopes
+     * @see #supportsAudiencesAndScopes()
+     */
+    default TokenHolder requestAccessToken(String audience, String scope) throws IOException {
+        throw new UnsupportedOperationException(
+                "Requesting tokens for other audiences or scopes is not supported by " + getClass());
+    }
+
+    /**
+     * Tells whether {@link #requestAccessToken(String, String)} is supported. Checked before tokens
+     * for other audiences or scopes are cached, so an unsupported client fails immediately rather
+     * than being retried like an unavailable authorization server.
+     *
+     * @return true if tokens can be requested for other audiences and scopes
+     */
+    default boolean supportsAudiencesAndScopes() {
+        return false;
+    }
+
     /**
      * The renewAccessToken method is used to request a new access token using a refresh token.
      *
@@ -1,32 +1,98 @@
 package org.entur.auth.client;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.LoadingCache;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
 import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import org.entur.auth.client.AccessTokenListener.RefreshCause;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Manages the retrieval and caching of access tokens for authentication. Utilizes Caffeine caching
- * to optimize token retrieval and refresh logic.
+ * Manages the retrieval and caching of access tokens for authentication. The current token is kept
+ * in an immutable {@link TokenState} snapshot which is read without locking, while token retrieval
+ * is guarded by a single-flight refresh so that only one request to the authorization server is
+ * running at any time.
+ *
+ * <p>Once a token has been retrieved, the factory is registered with the shared {@link
+ * RefreshScheduler}, which renews the token in the background when it reaches the should-refresh
+ * threshold. Callers only have to wait for the authorization server if background renewal has not
+ * succeeded in time.
  */
-public class AccessTokenFactory {
-    public static final String ACCESS_TOKEN_KEY = "access_token";
+public class AccessTokenFactory implements AutoCloseable {
+    /**
+     * Key formerly used for the token cache.
+     *
+     * @deprecated the token is no longer kept in a keyed cache.
+     */
+    @Deprecated public static final String ACCESS_TOKEN_KEY = "access_token";
+
     private static final long MUST_REFRESH_THRESHOLD =
             60; // Minimum time (seconds) before forced token refresh
     private static final long SHOULD_REFRESH_THRESHOLD =
             120; // Time (seconds) before proactive token refresh
+    private static final long TOKEN_STORE_POLL_INTERVAL =
+            1000; // Time (millis) between reads of a token being requested by another node
+    private static final long FETCH_AHEAD_TIME =
+            30_000; // Time (millis) before a predicted use when a token is retrieved ahead of it
     private static final Logger log = LoggerFactory.getLogger(AccessTokenFactory.class);
-    private final AccessTokenClient client;
 
-    private AccessTokenWrapper loadedAccessToken; // Holds the latest successfully retrieved token
+    /** Maximum wait of callers without a deadline. */
+    private static final long NO_DEADLINE = -1;
+
+    private final AccessTokenClient client;
 
     protected Clock clock = Clock.systemUTC(); // Used for handling time-based operations
-    protected LoadingCache<String, TokenHolder> cache; // Caching mechanism for access tokens
+
+    protected Executor refreshExecutor =
+            RefreshScheduler.getInstance().executor(); // Used for background refreshes
+
+    /** Latest token snapshot, replaced as a whole when a token is retrieved or retrieval fails. */
+    private volatile TokenState state = TokenState.EMPTY;
+
+    /** Refresh currently in progress, or null when no refresh is running. */
+    private final AtomicReference<CompletableFuture<TokenState>> pendingRefresh =
+            new AtomicReference<>();
+
+    /** Background renewal scheduled for the current state, or null if none is scheduled. */
+    private volatile RefreshScheduler.Timeout scheduledRefresh;
+
+    /** Set when the factory is closed, stops background renewal. */
+    private volatile boolean closed;
+
+    /** Number of holders of a factory shared through {@link SharedAccessTokenFactories}. */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /** Name identifying the client in JFR events, see {@link #getName()}. */
+    private volatile String name;
+
+    /** Listeners receiving token events, shared with the factories of other audiences. */
+    private List<AccessTokenListener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Calls served by the valid cached token, or null until a listener has been added. */
+    private volatile LongAdder cacheHits;
+
+    /** Calls finding the token in need of a refresh, or null until a listener has been added. */
+    private volatile LongAdder cacheMisses;
+
+    /** Usage of the factory, or null if tokens are always renewed in the background. */
+    private volatile UsageTracker usage;
+
+    /** Retrieve tokens ahead of the predicted use of idle clients with periodic usage. */
+    private volatile boolean fetchAhead;
 
     /**
      * Threshold (in seconds) before a token must be refreshed. Requests will wait for the new token
@@ -40,57 +106,650 @@ public class AccessTokenFactory {
      */
     private long shouldRefreshThreshold = SHOULD_REFRESH_THRESHOLD;
 
+    /** Decides when tokens are refreshed, or null to use the fixed thresholds. */
+    private RefreshPolicy refreshPolicy;
+
+    /** Take the expiry from the {@code exp} claim of JWT access tokens. */
+    private boolean jwtExpiry;
+
     /** Minimum backoff time (in seconds) before retrying when token retrieval fails. */
     private long minThrottleTime = 1; // 1 second
 
     /** Maximum backoff time (in seconds) for retries after repeated token retrieval failures. */
     private long maxThrottleTime = 600; // 10 minutes
 
-    /** Current backoff time used for retrying token retrieval. */
-    private long currentThrottleTime = 1; // 10 minutes
+    /** Decides the backoff after failures, or null to use decorrelated jitter. */
+    private BackoffPolicy backoffPolicy;
+
+    /** Backoff (in milliseconds) after the previous failure, or 0 after a success. */
+    private long backoffDelay;
+
+    /** Maximum number of audiences and scopes for which tokens are kept. */
+    private int maximumAudiences = 64;
+
+    /** Time (in seconds) after which tokens for an unused audience are discarded. */
+    private long audienceIdleTimeout = 1800; // 30 minutes
+
+    /** Tokens for other audiences and scopes, created on first use. */
+    private volatile AudienceTokenCache audienceTokens;
+
+    /** File the latest token is written to, or null if tokens are not persisted. */
+    private volatile TokenSnapshotFile tokenSnapshotFile;
+
+    /** Store sharing tokens with other nodes, or null if tokens are not shared. */
+    private volatile TokenStore tokenStore;
+
+    /** Key of the client credentials in the token store. */
+    private volatile String tokenStoreKey;
+
+    /** Duration (in seconds) of the token store lease, and of waiting for another node's token. */
+    private long tokenStoreLeaseTime = 30;
 
     /**
-     * Constructs an AccessTokenFactory with a given AccessTokenClient and initializes the token
-     * cache.
+     * Constructs an AccessTokenFactory with a given AccessTokenClient.
      *
      * @param client the AccessTokenClient responsible for retrieving tokens
      */
     public AccessTokenFactory(AccessTokenClient client) {
         this.client = client;
-        this.cache =
-                Caffeine.newBuilder()
-                        .expireAfterWrite(
-                                5, TimeUnit.HOURS) // Set default expireAfterWrite, needed so it can be changed in
-                        // loadAccessToken
-                        .refreshAfterWrite(
-                                5, TimeUnit.HOURS) // Set default refreshAfterWrite, needed so it can be changed in
-                        // loadAccessToken
-                        .build(key -> loadAccessToken());
     }
 
     /**
-     * Retrieves the current access token, ensuring it is valid. If expired, it triggers a refresh.
+     * Retrieves the current access token, ensuring it is valid. If the token is about to expire, a
+     * refresh is started in the background. If it must be refreshed, the caller waits for the
+     * refresh to complete.
      *
      * @return a valid access token as a String
      * @throws AccessTokenUnavailableException if no valid token is available
      */
     public String getAccessToken() throws AccessTokenUnavailableException {
-        TokenHolder tokenHolder = this.cache.get(ACCESS_TOKEN_KEY);
-        if (tokenHolder == null || tokenHolder.getAccessToken() == null) {
+        return currentState().accessToken;
+    }
+
+    /**
+     * Retrieves the value of the Authorization header for the current access token, i.e. {@code
+     * "Bearer <token>"}. The value is built once per token, so no allocation takes place per call.
+     *
+     * @return the Authorization header value for a valid access token
+     * @throws AccessTokenUnavailableException if no valid token is available
+     */
+    public String getAuthorizationHeader() throws AccessTokenUnavailableException {
+        return currentState().authorizationHeader;
+    }
+
+    /**
+     * Retrieves the current access token, waiting at most the given time if it must be refreshed. If
+     * no token is available in time, the caller gives up while the refresh continues in the
+     * background, so later callers still get the new token.
+     *
+     * @param maxWait maximum time to wait for a token to be retrieved
+     * @return a valid access token as a String
+     * @throws AccessTokenUnavailableException if no valid token is available within the given time
+     */
+    public String getAccessToken(Duration maxWait) throws AccessTokenUnavailableException {
+        return currentState(maxWait).accessToken;
+    }
+
+    /**
+     * Retrieves the Authorization header value for the current access token, waiting at most the
+     * given time if it must be refreshed, see {@link #getAccessToken(Duration)}.
+     *
+     * @param maxWait maximum time to wait for a token to be retrieved
+     * @return the Authorization header value for a valid access token
+     * @throws AccessTokenUnavailableException if no valid token is available within the given time
+     */
+    public String getAuthorizationHeader(Duration maxWait) throws AccessTokenUnavailableException {
+        return currentState(maxWait).authorizationHeader;
+    }
+
+    /**
+     * Retrieves the claims of the current access token, see {@link #getAccessToken()}. The claims
+     * are decoded once per token, so callers do not have to decode the token on each request.
+     *
+     * @return the claims of a valid access token, empty if the token is not a JWT
+     * @throws AccessTokenUnavailableException if no valid token is available
+     */
+    public JwtClaims getClaims() throws AccessTokenUnavailableException {
+        return currentState().claims;
+    }
+
+    /**
+     * Retrieves the US-ASCII encoded value of the Authorization header for the current access token.
+     * The returned buffer is read-only and shared between callers, so use absolute get methods or
+     * {@link ByteBuffer#duplicate()} before reading it relatively.
+     *
+     * @return the encoded Authorization header value for a valid access token
+     * @throws AccessTokenUnavailableException if no valid token is available
+     */
+    public ByteBuffer getAuthorizationHeaderBytes() throws AccessTokenUnavailableException {
+        return currentState().authorizationHeaderBytes;
+    }
+
+    /**
+     * Retrieves the current access token without blocking the calling thread. The returned future is
+     * completed immediately if the cached token is valid. Otherwise it completes when the running
+     * refresh completes, sharing the refresh with blocking callers of {@link #getAccessToken()}.
+     *
+     * @return a future completed with a valid access token, or completed exceptionally with {@link
+     *     AccessTokenUnavailableException} if no valid token is available
+     */
+    public CompletableFuture<String> getAccessTokenAsync() {
+        TokenState current = state;
+        long now = clock.millis();
+        if (now < current.refreshAt) {
+            recordHit();
+            return CompletableFuture.completedFuture(current.accessToken);
+        }
+        return currentStateAsync(current, now).thenApply(tokenState -> tokenState.accessToken);
+    }
+
+    /**
+     * Retrieves the Authorization header value for the current access token without blocking the
+     * calling thread, see {@link #getAccessTokenAsync()} and {@link #getAuthorizationHeader()}.
+     *
+     * @return a future completed with the Authorization header value for a valid access token
+     */
+    public CompletableFuture<String> getAuthorizationHeaderAsync() {
+        TokenState current = state;
+        long now = clock.millis();
+        if (now < current.refreshAt) {
+            recordHit();
+            return CompletableFuture.completedFuture(current.authorizationHeader);
+        }
+        return currentStateAsync(current, now).thenApply(tokenState -> tokenState.authorizationHeader);
+    }
+
+    /**
+     * Retrieves an access token for another audience and scopes, using the same credentials and
+     * client as the default token. Each audience and set of scopes has its own token, expiry and
+     * refresh, kept for as long as it is in use.
+     *
+     * @param audience the audience of the token, or null for the default audience of the client
+     * @param scopes the scopes of the token, or null for the default scopes
+     * @return a valid access token as a String
+     * @throws AccessTokenUnavailableException if no valid token is available
+     * @throws UnsupportedOperationException if the client does not support other audiences or scopes
+     */
+    public String getAccessToken(String audience, Set<String> scopes)
+            throws AccessTokenUnavailableException {
+        return getAccessToken(TokenKey.of(audience, scopes));
+    }
+
+    /**
+     * Retrieves an access token for the audience and scopes of the given key, see {@link
+     * #getAccessToken(String, Set)}.
+     *
+     * @param key the audience and scopes
+     * @return a valid access token as a String
+     * @throws AccessTokenUnavailableException if no valid token is available
+     * @throws UnsupportedOperationException if the client does not support other audiences or scopes
+     */
+    public String getAccessToken(TokenKey key) throws AccessTokenUnavailableException {
+        return audienceTokens().get(key).getAccessToken();
+    }
+
+    /**
+     * Retrieves the Authorization header value for the audience and scopes of the given key, see
+     * {@link #getAccessToken(String, Set)} and {@link #getAuthorizationHeader()}.
+     *
+     * @param key the audience and scopes
+     * @return the Authorization header value for a valid access token
+     * @throws AccessTokenUnavailableException if no valid token is available
+     * @throws UnsupportedOperationException if the client does not support other audiences or scopes
+     */
+    public String getAuthorizationHeader(TokenKey key) throws AccessTokenUnavailableException {
+        return audienceTokens().get(key).getAuthorizationHeader();
+    }
+
+    /**
+     * Retrieves an access token for the audience and scopes of the given key without blocking the
+     * calling thread, see {@link #getAccessTokenAsync()}.
+     *
+     * @param key the audience and scopes
+     * @return a future completed with a valid access token
+     * @throws UnsupportedOperationException if the client does not support other audiences or scopes
+     */
+    public CompletableFuture<String> getAccessTokenAsync(TokenKey key) {
+        return audienceTokens().get(key).getAccessTokenAsync();
+    }
+
+    private AudienceTokenCache audienceTokens() {
+        AudienceTokenCache cache = audienceTokens;
+        if (cache == null) {
+            synchronized (this) {
+                cache = audienceTokens;
+                if (cache == null) {
+                    cache = new AudienceTokenCache(this, maximumAudiences, audienceIdleTimeout * 1000);
+                    audienceTokens = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Creates a factory with the same settings as this factory, used for the tokens of other
+     * audiences and scopes.
+     *
+     * @param client the client retrieving tokens for the derived factory
+     * @return a new factory
+     */
+    AccessTokenFactory createDerived(AccessTokenClient client) {
+        AccessTokenFactory derived = new AccessTokenFactory(client);
+        derived.clock = clock;
+        derived.refreshExecutor = refreshExecutor;
+        derived.name = name;
+        derived.listeners = listeners;
+        derived.mustRefreshThreshold = mustRefreshThreshold;
+        derived.shouldRefreshThreshold = shouldRefreshThreshold;
+        derived.refreshPolicy = refreshPolicy;
+        derived.jwtExpiry = jwtExpiry;
+        derived.minThrottleTime = minThrottleTime;
+        derived.maxThrottleTime = maxThrottleTime;
+        derived.backoffPolicy = backoffPolicy;
+        derived.usage = usage != null ? new UsageTracker() : null;
+        derived.fetchAhead = fetchAhead;
+        return derived;
+    }
+
+    /**
+     * Returns a state holding a usable token, refreshing it if needed.
+     *
+     * @return a state holding a valid access token
+     * @throws AccessTokenUnavailableException if no valid token is available
+     */
+    private TokenState currentState() {
+        TokenState current = state;
+        long now = clock.millis();
+        if (now < current.refreshAt) {
+            recordHit();
+            return current;
+        }
+        return currentState(current, now, NO_DEADLINE);
+    }
+
+    /**
+     * Returns a state holding a usable token, waiting at most the given time if it must be
+     * refreshed.
+     *
+     * @param maxWait maximum time to wait for a token to be retrieved
+     * @return a state holding a valid access token
+     * @throws AccessTokenUnavailableException if no valid token is available within the given time
+     */
+    private TokenState currentState(Duration maxWait) {
+        TokenState current = state;
+        long now = clock.millis();
+        if (now < current.refreshAt) {
+            recordHit();
+            return current;
+        }
+        return currentState(current, now, Math.max(0, maxWait.toNanos()));
+    }
+
+    /**
+     * Slow path of {@link #currentState()}, used when the token is no longer plain valid.
+     *
+     * @param current the state observed by the caller
+     * @param now the current time (epoch millis)
+     * @param maxWaitNanos maximum time to wait for a refresh, or {@link #NO_DEADLINE}
+     * @return a state holding a valid access token
+     */
+    private TokenState currentState(TokenState current, long now, long maxWaitNanos) {
+        recordMiss(now);
+        if (current.accessToken != null && now < current.mustRefreshAt) {
+            if (now >= current.retryAt) {
+                refresh(current, RefreshCause.SHOULD_REFRESH, true);
+            }
+            return current;
+        }
+
+        if (now < current.retryAt) {
+            // Retrieval failed recently, do not retry before backoff time has passed
+            return usable(current, now);
+        }
+
+        log.debug("Access token must be refreshed, waiting for new token.");
+        TokenBlockingWaitEvent event = new TokenBlockingWaitEvent();
+        event.begin();
+        long waitStart = System.nanoTime();
+        TokenState refreshed;
+        try {
+            if (maxWaitNanos == NO_DEADLINE) {
+                refreshed = refresh(current, RefreshCause.MUST_REFRESH, false).join();
+            } else {
+                // Run on the refresh executor, so the refresh outlives a caller giving up
+                refreshed = await(refresh(current, RefreshCause.MUST_REFRESH, true), maxWaitNanos);
+            }
+        } finally {
+            long waited = System.nanoTime() - waitStart;
+            notifyListeners(listener -> listener.blockingWaitCompleted(waited));
+            event.end();
+            if (event.shouldCommit()) {
+                event.client = getName();
+                event.commit();
+            }
+        }
+        return usable(refreshed, clock.millis());
+    }
+
+    /**
+     * Waits for a refresh without cancelling it, so other callers sharing the refresh are not
+     * affected when the wait times out.
+     *
+     * @param refresh the running refresh
+     * @param maxWaitNanos maximum time to wait
+     * @return the state after the refresh
+     * @throws AccessTokenUnavailableException if the refresh does not complete in time
+     */
+    private static TokenState await(CompletableFuture<TokenState> refresh, long maxWaitNanos) {
+        try {
+            return refresh.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            throw new AccessTokenUnavailableException(
+                    "No access token retrieved within "
+                            + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos)
+                            + " ms");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new AccessTokenUnavailableException("Interrupted while waiting for access token", ex);
+        } catch (ExecutionException ex) {
+            throw new AccessTokenUnavailableException("Access token retrieval failed", ex.getCause());
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #currentState(TokenState, long, long)}. A required refresh is
+     * run on the refresh executor, so the caller never waits for the authorization server.
+     *
+     * @param current the state observed by the caller
+     * @param now the current time (epoch millis)
+     * @return a future completed with a state holding a valid access token
+     */
+    private CompletableFuture<TokenState> currentStateAsync(TokenState current, long now) {
+        recordMiss(now);
+        if (current.accessToken != null && now < current.mustRefreshAt) {
+            if (now >= current.retryAt) {
+                refresh(current, RefreshCause.SHOULD_REFRESH, true);
+            }
+            return CompletableFuture.completedFuture(current);
+        }
+
+        if (now < current.retryAt) {
+            return current.isUsable(now)
+                    ? CompletableFuture.completedFuture(current)
+                    : CompletableFuture.failedFuture(new AccessTokenUnavailableException());
+        }
+
+        return refresh(current, RefreshCause.MUST_REFRESH, true)
+                .thenApply(refreshed -> usable(refreshed, clock.millis()));
+    }
+
+    private static TokenState usable(TokenState tokenState, long now) {
+        if (!tokenState.isUsable(now)) {
             throw new AccessTokenUnavailableException();
         }
+        return tokenState;
+    }
+
+    /**
+     * Starts a refresh unless one is already running, in which case the running refresh is
+     * returned.
+     *
+     * @param observed the state which the caller found to be in need of a refresh
+     * @param cause the reason for the refresh, reported to listeners if a refresh is started
+     * @param background true to retrieve the token on the refresh executor, false to retrieve it on
+     *     the calling thread
+     * @return a future completed with the state after the refresh
+     */
+    private CompletableFuture<TokenState> refresh(
+            TokenState observed, RefreshCause cause, boolean background) {
+        while (true) {
+            CompletableFuture<TokenState> pending = pendingRefresh.get();
+            if (pending != null) {
+                return pending;
+            }
+
+            CompletableFuture<TokenState> created = new CompletableFuture<>();
+            if (pendingRefresh.compareAndSet(null, created)) {
+                if (state != observed) {
+                    // Another refresh completed after the caller read the state
+                    pendingRefresh.set(null);
+                    created.complete(state);
+                    return created;
+                }
+
+                RefreshCause started = observed.accessToken == null ? RefreshCause.INITIAL : cause;
+                notifyListeners(listener -> listener.refreshStarted(started));
+                if (background) {
+                    refreshExecutor.execute(() -> refresh(created));
+                } else {
+                    refresh(created);
+                }
+                return created;
+            }
+        }
+    }
+
+    private void refresh(CompletableFuture<TokenState> promise) {
+        try {
+            TokenState previous = state;
+            TokenState next = loadAccessToken(previous);
+            if (next == null) {
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(tokenStoreLeaseTime);
+                awaitSharedAccessToken(promise, previous, deadline);
+                return;
+            }
+            completeRefresh(promise, next);
+        } catch (Throwable ex) {
+            pendingRefresh.set(null);
+            promise.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private void completeRefresh(CompletableFuture<TokenState> promise, TokenState next) {
+        UsageTracker tracker = usage;
+        if (tracker != null && next.retryAt == Long.MIN_VALUE) {
+            tracker.tokenReceived();
+        }
+        state = next;
+        pendingRefresh.set(null);
+        promise.complete(next);
+        scheduleRefresh(next);
+    }
+
+    /**
+     * Waits for another node to publish a token to the token store. The store is read again on the
+     * shared scheduler, so no thread is blocked while waiting. If no token is published before the
+     * deadline, the token is requested directly.
+     *
+     * @param promise the running refresh, completed when a token is found
+     * @param previous the state before the refresh
+     * @param deadline when to stop waiting ({@link System#nanoTime()})
+     */
+    private void awaitSharedAccessToken(
+            CompletableFuture<TokenState> promise, TokenState previous, long deadline) {
+        RefreshScheduler.getInstance()
+                .schedule(
+                        () -> {
+                            try {
+                                TokenState shared = pollSharedAccessToken(previous, deadline);
+                                if (shared == null) {
+                                    awaitSharedAccessToken(promise, previous, deadline);
+                                } else {
+                                    completeRefresh(promise, shared);
+                                }
+                            } catch (Throwable ex) {
+                                pendingRefresh.set(null);
+                                promise.completeExceptionally(ex);
+                                throw ex;
+                            }
+                        },
+                        TOKEN_STORE_POLL_INTERVAL);
+    }
 
-        if (tokenHolder.getExpiresAt() != null
-                && Instant.now().isAfter(tokenHolder.getExpiresAt().toInstant())) {
-            log.debug("Access token has expired and will be reloaded.");
-            this.cache.invalidateAll();
-            tokenHolder = this.cache.get(ACCESS_TOKEN_KEY);
-            if (tokenHolder == null || tokenHolder.getAccessToken() == null) {
-                throw new AccessTokenUnavailableException();
+    /**
+     * Reads the token store once while another node is requesting the token.
+     *
+     * @param previous the state before the refresh
+     * @param deadline when to stop waiting ({@link System#nanoTime()})
+     * @return the state after the refresh, or null to keep waiting
+     */
+    private TokenState pollSharedAccessToken(TokenState previous, long deadline) {
+        TokenStore store = tokenStore;
+        try {
+            long now = clock.millis();
+            TokenStore.StoredToken stored = store.get(tokenStoreKey);
+            if (isFresh(stored, previous, now)) {
+                return restoredState(stored.accessToken(), stored.expiresAt(), now);
             }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Token store is unavailable, requesting OpenID token directly", ex);
+            return requestAccessToken(previous);
+        }
+
+        if (System.nanoTime() - deadline >= 0) {
+            log.debug("No OpenID token was published by another node, requesting it directly");
+            return requestAccessToken(previous);
+        }
+        return null;
+    }
+
+    /**
+     * Registers a background renewal of the given state with the shared scheduler, replacing any
+     * renewal scheduled for a previous state.
+     *
+     * @param tokenState the current state
+     */
+    private void scheduleRefresh(TokenState tokenState) {
+        RefreshScheduler.Timeout previous = scheduledRefresh;
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        long refreshAt = tokenState.nextRefreshAt();
+        long now = clock.millis();
+        if (closed
+                || refreshAt == Long.MIN_VALUE
+                || (tokenState.retryAt == Long.MIN_VALUE && refreshAt <= now)) {
+            // A token due for renewal when it is received is renewed by callers, not in a loop
+            scheduledRefresh = null;
+            return;
+        }
+
+        scheduledRefresh =
+                scheduleRenewal(new ScheduledRefresh(this, tokenState, Long.MIN_VALUE), refreshAt - now);
+    }
+
+    /**
+     * Schedules a background renewal of this factory on the shared scheduler. Replaced by tests
+     * which drive the factory with their own clock.
+     *
+     * @param renewal the renewal to run
+     * @param delayMillis delay in milliseconds
+     * @return a handle which can be used to cancel the renewal
+     */
+    RefreshScheduler.Timeout scheduleRenewal(Runnable renewal, long delayMillis) {
+        return RefreshScheduler.getInstance().schedule(renewal, delayMillis);
+    }
+
+    /**
+     * Called by the shared scheduler when the given state is due for renewal, or when a token is
+     * retrieved ahead of a predicted use.
+     *
+     * @param scheduled the state the renewal was scheduled for
+     * @param predictedUse the predicted use to retrieve a token ahead of, or {@link Long#MIN_VALUE}
+     *     for a regular renewal
+     */
+    private void scheduledRefresh(TokenState scheduled, long predictedUse) {
+        TokenState current = state;
+        if (closed || current != scheduled) {
+            return; // Closed, or renewed on demand meanwhile
+        }
+
+        UsageTracker tracker = usage;
+        if (predictedUse != Long.MIN_VALUE && tracker != null) {
+            log.debug("Retrieving OpenID token ahead of predicted use");
+            tracker.fetchedAhead(predictedUse);
+            refresh(current, RefreshCause.SCHEDULED, false);
+        } else if (clock.millis() < current.nextRefreshAt()) {
+            scheduleRefresh(current);
+        } else if (tracker != null && current.accessToken != null && !tracker.checkUsed()) {
+            suspendRefresh(current, tracker);
+        } else {
+            refresh(current, RefreshCause.SCHEDULED, false);
+        }
+    }
+
+    /**
+     * Lets the token of an idle client lapse instead of renewing it, so the authorization server is
+     * not called for tokens nobody uses. The next caller retrieves a new token on demand, unless
+     * the use is predicted and a token is retrieved ahead of it.
+     *
+     * @param current the current state
+     * @param tracker the usage of this factory
+     */
+    private void suspendRefresh(TokenState current, UsageTracker tracker) {
+        log.debug("OpenID token has not been used since it was retrieved, not renewing it");
+        tracker.suspend();
+        scheduledRefresh = null;
+        if (!fetchAhead) {
+            return;
+        }
+
+        long predictedUse = tracker.predictNextUse();
+        long now = clock.millis();
+        if (predictedUse > current.mustRefreshAt && predictedUse > now) {
+            long fetchAt = Math.max(now, predictedUse - FETCH_AHEAD_TIME);
+            scheduledRefresh =
+                    scheduleRenewal(new ScheduledRefresh(this, current, predictedUse), fetchAt - now);
+        }
+    }
+
+    /**
+     * Adds a holder of a shared factory.
+     *
+     * @return false if the factory has already been closed by all its holders
+     */
+    boolean retain() {
+        int current;
+        do {
+            current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Stops background renewal of the token. The factory can still be used, but tokens will only be
+     * retrieved on demand. A factory shared by several holders keeps renewing the token until all of
+     * them have closed it.
+     */
+    @Override
+    public void close() {
+        if (references.decrementAndGet() > 0) {
+            return;
+        }
+        closed = true;
+        RefreshScheduler.Timeout timeout = scheduledRefresh;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        AudienceTokenCache cache = audienceTokens;
+        if (cache != null) {
+            cache.close();
         }
+    }
 
-        return tokenHolder.getAccessToken();
+    /**
+     * Stops the background threads shared by all factories, so the class loader of an undeployed
+     * application can be released. Factories still in use retrieve tokens when callers need them,
+     * and background renewal starts again with their next token.
+     */
+    public static void shutdownRefreshScheduler() {
+        RefreshScheduler.shutdown();
     }
 
     public long getMustRefreshThreshold() {
@@ -109,10 +768,90 @@ public class AccessTokenFactory {
         this.shouldRefreshThreshold = shouldRefreshThreshold;
     }
 
+    /**
+     * Gets the policy deciding when tokens are refreshed.
+     *
+     * @return the configured policy, or a policy using the fixed thresholds of this factory
+     */
+    public RefreshPolicy getRefreshPolicy() {
+        RefreshPolicy policy = refreshPolicy;
+        return policy != null
+                ? policy
+                : RefreshPolicy.fixed(shouldRefreshThreshold, mustRefreshThreshold);
+    }
+
+    /**
+     * Sets the policy deciding when tokens are refreshed, replacing the fixed thresholds. The
+     * policy is applied to tokens retrieved after this call. An {@link AdaptiveRefreshPolicy} is
+     * added as a listener, so it observes the token requests of this factory.
+     *
+     * @param refreshPolicy the policy, or null to use the fixed thresholds
+     */
+    public void setRefreshPolicy(RefreshPolicy refreshPolicy) {
+        AdaptiveRefreshPolicy previous = adaptive(this.refreshPolicy);
+        AdaptiveRefreshPolicy adaptive = adaptive(refreshPolicy);
+        if (previous != adaptive) {
+            if (previous != null) {
+                removeListener(previous);
+            }
+            if (adaptive != null) {
+                addListener(adaptive);
+            }
+        }
+        this.refreshPolicy = refreshPolicy;
+    }
+
+    /**
+     * Finds the adaptive policy of a policy, which may be wrapped with jitter.
+     *
+     * @param policy the policy, or null
+     * @return the adaptive policy, or null
+     */
+    private static AdaptiveRefreshPolicy adaptive(RefreshPolicy policy) {
+        if (policy instanceof RefreshPolicy.Jitter jitter) {
+            return adaptive(jitter.policy());
+        }
+        return policy instanceof AdaptiveRefreshPolicy adaptive ? adaptive : null;
+    }
+
+    public boolean isJwtExpiry() {
+        return jwtExpiry;
+    }
+
+    /**
+     * Takes the expiry of JWT access tokens from their {@code exp} claim, which unlike {@code
+     * expires_in} does not include the network delay, so the refresh thresholds can be less
+     * conservative. If the local clock does not agree with the issue time of the token, the
+     * lifetime of the token is counted from when it was received instead. Tokens which are not JWTs
+     * use {@code expires_in}.
+     *
+     * @param jwtExpiry true to use the expiry of the JWT
+     */
+    public void setJwtExpiry(boolean jwtExpiry) {
+        this.jwtExpiry = jwtExpiry;
+    }
+
     public AccessTokenClient getClient() {
         return client;
     }
 
+    /**
+     * Gets the name identifying the client in diagnostics such as JFR events.
+     *
+     * @return the name set with {@link #setName(String)}, or the class name of the client
+     */
+    public String getName() {
+        String current = name;
+        if (current != null) {
+            return current;
+        }
+        return client != null ? client.getClass().getSimpleName() : null;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
     public long getMinThrottleTime() {
         return minThrottleTime;
     }
@@ -130,103 +869,527 @@ public class AccessTokenFactory {
     }
 
     /**
-     * Loads a new access token, handling retries and caching policies.
+     * Gets the policy deciding the backoff after failed token retrieval.
+     *
+     * @return the configured policy, or decorrelated jitter between the minimum and maximum
+     *     throttle time of this factory
+     */
+    public BackoffPolicy getBackoffPolicy() {
+        BackoffPolicy policy = backoffPolicy;
+        return policy != null
+                ? policy
+                : BackoffPolicy.decorrelatedJitter(
+                        Duration.ofSeconds(minThrottleTime), Duration.ofSeconds(maxThrottleTime));
+    }
+
+    /**
+     * Sets the policy deciding the backoff after failed token retrieval, replacing the minimum and
+     * maximum throttle time.
+     *
+     * @param backoffPolicy the policy, or null to use decorrelated jitter
+     */
+    public void setBackoffPolicy(BackoffPolicy backoffPolicy) {
+        this.backoffPolicy = backoffPolicy;
+    }
+
+    public TokenSnapshotFile getTokenSnapshotFile() {
+        return tokenSnapshotFile;
+    }
+
+    /**
+     * Persists the latest token to the given file, and restores the token from the file if it has
+     * not reached the must-refresh point of the refresh policy. A restored token is used without
+     * contacting the authorization server, and is renewed in the background as usual.
+     *
+     * @param tokenSnapshotFile the snapshot file, or null to stop persisting tokens
+     */
+    public void setTokenSnapshotFile(TokenSnapshotFile tokenSnapshotFile) {
+        this.tokenSnapshotFile = tokenSnapshotFile;
+        if (tokenSnapshotFile == null) {
+            return;
+        }
+
+        TokenSnapshotFile.Snapshot snapshot = tokenSnapshotFile.read();
+        long now = clock.millis();
+        if (snapshot == null || snapshot.expiresAt() <= now) {
+            return;
+        }
+
+        TokenState restored = restoredState(snapshot.accessToken(), snapshot.expiresAt(), now);
+        if (restored.mustRefreshAt <= now) {
+            return;
+        }
+        if (pendingRefresh.get() == null && state == TokenState.EMPTY) {
+            state = restored;
+            log.info(
+                    "Restored OpenID token from {}, valid for {} seconds",
+                    tokenSnapshotFile.getPath(),
+                    (snapshot.expiresAt() - now) / 1000);
+            scheduleRefresh(restored);
+        }
+    }
+
+    /**
+     * Creates a state for a token retrieved earlier, by this or another node.
+     *
+     * @param accessToken the access token
+     * @param expiresAt the expiry of the access token (epoch millis)
+     * @param now the current time (epoch millis)
+     * @return a valid state
+     */
+    private TokenState restoredState(String accessToken, long expiresAt, long now) {
+        long expiresIn = (expiresAt - now) / 1000;
+        TokenHolder tokenHolder = IssuedToken.of(accessToken, null, expiresIn);
+        // The stored expiry is already exact
+        return TokenState.valid(tokenHolder, now, getRefreshPolicy(), false);
+    }
+
+    /**
+     * Shares tokens with other nodes through the given store. Before requesting a token, the stored
+     * token is used if it is fresh. Otherwise only the node holding the lease of the key requests a
+     * token and publishes it, while the other nodes keep their token or wait for the published one.
+     *
+     * @param tokenStore the store, or null to stop sharing tokens
+     * @param key identifies the client credentials in the store, must not contain the secret
+     */
+    public void setTokenStore(TokenStore tokenStore, String key) {
+        this.tokenStoreKey = key;
+        this.tokenStore = tokenStore;
+    }
+
+    public TokenStore getTokenStore() {
+        return tokenStore;
+    }
+
+    public long getTokenStoreLeaseTime() {
+        return tokenStoreLeaseTime;
+    }
+
+    public void setTokenStoreLeaseTime(long tokenStoreLeaseTime) {
+        this.tokenStoreLeaseTime = tokenStoreLeaseTime;
+    }
+
+    /**
+     * Writes a newly retrieved token to the snapshot file, if configured. The file is written on
+     * the refresh executor, so callers waiting for the token are not delayed.
+     *
+     * @param tokenState the retrieved token
+     */
+    private void persist(TokenState tokenState) {
+        TokenSnapshotFile snapshotFile = tokenSnapshotFile;
+        if (snapshotFile == null || tokenState.accessToken == null) {
+            return;
+        }
+
+        refreshExecutor.execute(
+                () -> {
+                    try {
+                        snapshotFile.write(tokenState.accessToken, tokenState.expiresAt);
+                    } catch (IOException | RuntimeException ex) {
+                        log.warn("Unable to write token snapshot {}", snapshotFile.getPath(), ex);
+                    }
+                });
+    }
+
+    public int getMaximumAudiences() {
+        return maximumAudiences;
+    }
+
+    public void setMaximumAudiences(int maximumAudiences) {
+        this.maximumAudiences = maximumAudiences;
+    }
+
+    /**
+     * Checks whether tokens are only renewed in the background while the factory is in use.
+     *
+     * @return true if the tokens of idle clients lapse
+     */
+    public boolean isTrafficAwareRefresh() {
+        return usage != null;
+    }
+
+    /**
+     * Only renews tokens in the background if they have been used since they were retrieved. Busy
+     * clients never wait for a token, while the tokens of idle clients lapse and are retrieved on
+     * demand when the client is used again. Calls are counted with a striped counter, so the cost
+     * on the path returning a cached token stays low.
+     *
+     * @param trafficAwareRefresh true to let the tokens of idle clients lapse
+     */
+    public void setTrafficAwareRefresh(boolean trafficAwareRefresh) {
+        if (trafficAwareRefresh != (usage != null)) {
+            usage = trafficAwareRefresh ? new UsageTracker() : null;
+        }
+    }
+
+    public boolean isFetchAhead() {
+        return fetchAhead;
+    }
+
+    /**
+     * Retrieves a token shortly before the predicted use of an idle client, if the client is used
+     * again after evenly spaced idle periods, for example by a scheduled job. Only applies with
+     * {@link #setTrafficAwareRefresh(boolean) traffic-aware refresh}.
+     *
+     * @param fetchAhead true to retrieve tokens ahead of periodic use
+     */
+    public void setFetchAhead(boolean fetchAhead) {
+        this.fetchAhead = fetchAhead;
+    }
+
+    public long getAudienceIdleTimeout() {
+        return audienceIdleTimeout;
+    }
+
+    public void setAudienceIdleTimeout(long audienceIdleTimeout) {
+        this.audienceIdleTimeout = audienceIdleTimeout;
+    }
+
+    /**
+     * Adds a listener receiving token events of this factory and of its tokens for other audiences.
+     * Adding the first listener also starts counting cache hits and misses of the default token.
+     *
+     * @param listener the listener
+     */
+    public void addListener(AccessTokenListener listener) {
+        if (cacheHits == null) {
+            synchronized (this) {
+                if (cacheHits == null) {
+                    cacheMisses = new LongAdder();
+                    cacheHits = new LongAdder();
+                }
+            }
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added by {@link #addListener(AccessTokenListener)}.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(AccessTokenListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the number of calls served by the cached token without looking at a refresh. Only counted
+     * once a listener has been added.
+     *
+     * @return the number of cache hits
+     */
+    public long getCacheHits() {
+        LongAdder hits = cacheHits;
+        return hits != null ? hits.sum() : 0;
+    }
+
+    /**
+     * Gets the number of calls finding the token past the should-refresh threshold, missing or
+     * failed. Only counted once a listener has been added.
      *
-     * @return a new TokenHolder containing the access token
+     * @return the number of cache misses
+     */
+    public long getCacheMisses() {
+        LongAdder misses = cacheMisses;
+        return misses != null ? misses.sum() : 0;
+    }
+
+    /**
+     * Gets the remaining lifetime of the current token.
+     *
+     * @return milliseconds until the current token expires, or 0 if there is no usable token
+     */
+    public long getRemainingLifetime() {
+        TokenState current = state;
+        return current.accessToken == null ? 0 : Math.max(0, current.expiresAt - clock.millis());
+    }
+
+    /**
+     * Gets the remaining backoff time after failed token retrieval.
+     *
+     * @return milliseconds until token retrieval is retried, or 0 if the last retrieval succeeded
+     */
+    public long getBackoffTime() {
+        TokenState current = state;
+        return current.retryAt == Long.MIN_VALUE ? 0 : Math.max(0, current.retryAt - clock.millis());
+    }
+
+    private void recordHit() {
+        LongAdder hits = cacheHits;
+        if (hits != null) {
+            hits.increment();
+        }
+        UsageTracker tracker = usage;
+        if (tracker != null) {
+            tracker.use();
+        }
+    }
+
+    private void recordMiss(long now) {
+        LongAdder misses = cacheMisses;
+        if (misses != null) {
+            misses.increment();
+        }
+        UsageTracker tracker = usage;
+        if (tracker != null) {
+            tracker.use();
+            tracker.resume(now);
+        }
+    }
+
+    /**
+     * Passes an event to all listeners. A failing listener is logged, and does not affect token
+     * retrieval or the other listeners.
+     *
+     * @param event calls the listener method of the event
+     */
+    private void notifyListeners(Consumer<AccessTokenListener> event) {
+        for (AccessTokenListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException ex) {
+                log.warn("Access token listener failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Requests a new access token from the client. Called for each token request, so existing
+     * overrides keep working.
+     *
+     * @return the retrieved token
      * @throws IOException if token retrieval fails
+     * @deprecated tokens are no longer loaded into a cache; customize the {@link
+     *     AccessTokenClient} instead.
      */
+    @Deprecated
     protected TokenHolder loadAccessToken() throws IOException {
+        return client.requestAccessToken();
+    }
+
+    /**
+     * Loads a new access token. Only called by the thread owning the current refresh.
+     *
+     * @param previous the state before the refresh
+     * @return the state after the refresh, keeping the previous token if retrieval failed, or null
+     *     if another node is requesting the token and it must be awaited
+     */
+    private TokenState loadAccessToken(TokenState previous) {
         if (client == null) {
             throw new InternalError("AccessTokenClient is not set for AccessTokenFactory");
         }
 
+        TokenStore store = tokenStore;
+        if (store != null) {
+            try {
+                return loadSharedAccessToken(store, tokenStoreKey, previous);
+            } catch (IOException | RuntimeException ex) {
+                log.warn("Token store is unavailable, requesting OpenID token directly", ex);
+            }
+        }
+        return requestAccessToken(previous);
+    }
+
+    /**
+     * Requests a new access token from the authorization server.
+     *
+     * @param previous the state before the refresh
+     * @return the state after the refresh, keeping the previous token if retrieval failed
+     */
+    private TokenState requestAccessToken(TokenState previous) {
         log.info("Creating new OpenID token");
+        TokenFetchEvent event = new TokenFetchEvent();
+        event.begin();
+        long fetchStart = System.nanoTime();
         try {
-            var tokenHolder = client.requestAccessToken(); // will not use refresh token
-            this.loadedAccessToken = wrap(tokenHolder);
-
-            cache
-                    .policy()
-                    .refreshAfterWrite()
-                    .ifPresent(
-                            exp ->
-                                    exp.setRefreshesAfter(
-                                            Duration.ofSeconds(tokenHolder.getExpiresIn() - shouldRefreshThreshold)));
-            cache
-                    .policy()
-                    .expireAfterWrite()
-                    .ifPresent(
-                            exp ->
-                                    exp.setExpiresAfter(
-                                            Duration.ofSeconds(tokenHolder.getExpiresIn() - mustRefreshThreshold)));
-            currentThrottleTime = minThrottleTime;
+            var tokenHolder = loadAccessToken(); // will not use refresh token
+            long fetched = System.nanoTime() - fetchStart;
+            commit(event, TokenFetchEvent.SUCCESS);
+            notifyListeners(listener -> listener.tokenFetched(fetched));
+            var loaded =
+                    TokenState.valid(tokenHolder, clock.millis(), getRefreshPolicy(), jwtExpiry);
+            backoffDelay = 0;
 
             log.info("OpenID token is valid for {} seconds", tokenHolder.getExpiresIn());
+            persist(loaded);
 
-            return tokenHolder;
+            return loaded;
 
-        } catch (RuntimeException ex) {
-            return handleTokenFailure();
+        } catch (Exception ex) {
+            long failed = System.nanoTime() - fetchStart;
+            commit(event, TokenFetchEvent.FAILURE);
+            notifyListeners(listener -> listener.tokenFetchFailed(failed, ex));
+            return handleTokenFailure(previous, retryAfter(ex));
         }
     }
 
     /**
-     * Handles token retrieval failures by applying exponential backoff and adjusting expiration
-     * policies.
+     * Finds the time to wait requested by the authorization server, if any.
+     *
+     * @param ex the exception thrown by the client
+     * @return the requested time to wait, or null
      */
-    private TokenHolder handleTokenFailure() {
-        long mustRefreshIn =
-                this.loadedAccessToken == null ? 0 : this.loadedAccessToken.mustRefreshIn(clock.millis());
+    private static Duration retryAfter(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RetryAfterException retryAfterException) {
+                return retryAfterException.getRetryAfter();
+            }
+        }
+        return null;
+    }
 
-        if (mustRefreshIn > 0) {
-            log.info(
-                    "OpenID token can not be refreshed. Will retry after {} seconds", currentThrottleTime);
-            cache
-                    .policy()
-                    .refreshAfterWrite()
-                    .ifPresent(
-                            exp ->
-                                    exp.setRefreshesAfter(
-                                            Duration.ofSeconds(Math.min(currentThrottleTime, mustRefreshIn))));
-            cache
-                    .policy()
-                    .expireAfterAccess()
-                    .ifPresent(exp -> exp.setExpiresAfter(Duration.ofSeconds(mustRefreshIn)));
-            increaseNextThrottleTime();
-            return loadedAccessToken.getTokenHolder();
-        } else {
-            log.info("OpenID token can not be fetched. Will retry after {} seconds", currentThrottleTime);
-            cache
-                    .policy()
-                    .refreshAfterWrite()
-                    .ifPresent(exp -> exp.setRefreshesAfter(Duration.ofSeconds(currentThrottleTime)));
-            cache
-                    .policy()
-                    .expireAfterAccess()
-                    .ifPresent(exp -> exp.setExpiresAfter(Duration.ofSeconds(currentThrottleTime)));
-            increaseNextThrottleTime();
-            return new TokenHolder() {};
+    private void commit(TokenFetchEvent event, String status) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.client = getName();
+            event.status = status;
+            event.commit();
         }
     }
 
     /**
-     * Wraps a TokenHolder with additional metadata for refresh logic.
+     * Loads a token through the token store. Uses the stored token if it is fresh, or requests and
+     * publishes a new token if the lease is acquired. Otherwise another node is requesting the
+     * token: a still usable stored token is used until then, or the published token is awaited.
      *
-     * @param accessTokenResponse the retrieved access token
-     * @return a wrapped AccessTokenWrapper instance
+     * @param store the token store
+     * @param key the key of the client credentials
+     * @param previous the state before the refresh
+     * @return the state after the refresh, or null if the token of another node must be awaited
+     * @throws IOException if the store is unavailable before a token was requested
      */
-    private AccessTokenWrapper wrap(TokenHolder accessTokenResponse) {
-        return new AccessTokenWrapper(
-                        accessTokenResponse, clock.millis(), accessTokenResponse.getExpiresIn())
-                .setMustRefreshThreshold(mustRefreshThreshold);
+    private TokenState loadSharedAccessToken(TokenStore store, String key, TokenState previous)
+            throws IOException {
+        long now = clock.millis();
+        TokenStore.StoredToken stored = store.get(key);
+        if (isFresh(stored, previous, now)) {
+            return restoredState(stored.accessToken(), stored.expiresAt(), now);
+        }
+
+        TokenStore.Lease lease = store.tryAcquireLease(key, Duration.ofSeconds(tokenStoreLeaseTime));
+        if (lease != null) {
+            try {
+                // Published by another node before the lease was acquired
+                stored = store.get(key);
+                if (isFresh(stored, previous, now)) {
+                    return restoredState(stored.accessToken(), stored.expiresAt(), now);
+                }
+
+                TokenState loaded = requestAccessToken(previous);
+                if (loaded.retryAt == Long.MIN_VALUE) {
+                    publish(store, key, loaded, lease);
+                }
+                return loaded;
+            } finally {
+                release(lease);
+            }
+        }
+
+        if (stored != null && stored.expiresAt() > now) {
+            TokenState restored = restoredState(stored.accessToken(), stored.expiresAt(), now);
+            if (now < restored.mustRefreshAt) {
+                // Keep using the stored token, and look for the new one shortly
+                return restored.failed(now + TOKEN_STORE_POLL_INTERVAL);
+            }
+        }
+
+        log.debug("OpenID token is being requested by another node, waiting for it");
+        return null;
     }
 
-    /** Increases the throttle time for retries, using an exponential backoff strategy. */
-    private void increaseNextThrottleTime() {
-        long newNextThrottleTime = currentThrottleTime * 2;
-        if (newNextThrottleTime > maxThrottleTime) {
-            newNextThrottleTime = maxThrottleTime;
+    /**
+     * Publishes a retrieved token to other nodes. A failure is only logged, since the token is
+     * still valid for this node, and requesting it again would only load the authorization server.
+     */
+    private void publish(TokenStore store, String key, TokenState loaded, TokenStore.Lease lease) {
+        try {
+            store.put(key, new TokenStore.StoredToken(loaded.accessToken, loaded.expiresAt), lease);
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not publish OpenID token to token store", ex);
+        }
+    }
+
+    private static void release(TokenStore.Lease lease) {
+        try {
+            lease.close();
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not release token store lease", ex);
+        }
+    }
+
+    /**
+     * Checks whether a stored token has not reached the refresh point of the refresh policy. The
+     * token being refreshed is never fresh, since policies based on the lifetime of the token only
+     * know the lifetime remaining when the token is read from the store.
+     *
+     * @param stored the stored token, or null
+     * @param previous the state being refreshed
+     * @param now the current time (epoch millis)
+     * @return true if the stored token does not need to be refreshed yet
+     */
+    private boolean isFresh(TokenStore.StoredToken stored, TokenState previous, long now) {
+        return stored != null
+                && stored.expiresAt() > now
+                && !stored.accessToken().equals(previous.accessToken)
+                && now < getRefreshPolicy().refreshAt(now, stored.expiresAt());
+    }
+
+    /**
+     * Handles token retrieval failures by applying the backoff policy. The previous token is kept
+     * for as long as it has not expired.
+     *
+     * @param previous the state before the failed refresh
+     * @param retryAfter the time to wait requested by the authorization server, or null
+     * @return a failed state
+     */
+    private TokenState handleTokenFailure(TokenState previous, Duration retryAfter) {
+        long now = clock.millis();
+        long delay = getBackoffPolicy().nextDelay(backoffDelay, retryAfter);
+        backoffDelay = delay;
+        long retryAt = now + delay;
+
+        BackoffAppliedEvent event = new BackoffAppliedEvent();
+        if (event.shouldCommit()) {
+            event.client = getName();
+            event.throttleTime = delay;
+            event.tokenAvailable = previous.isUsable(now);
+            event.commit();
+        }
+
+        if (previous.accessToken != null && now < previous.mustRefreshAt) {
+            log.info("OpenID token can not be refreshed. Will retry after {} ms", delay);
+            if (retryAfter == null) {
+                // Retry before callers have to wait, unless the server asked to wait longer
+                retryAt = Math.min(retryAt, previous.mustRefreshAt);
+            }
+        } else {
+            log.info("OpenID token can not be fetched. Will retry after {} ms", delay);
+        }
+        return previous.failed(retryAt);
+    }
+
+    /**
+     * Background renewal task. Only holds a weak reference to the factory, so a factory which is no
+     * longer in use can be garbage collected while still being scheduled.
+     */
+    private static final class ScheduledRefresh implements Runnable {
+        private final WeakReference<AccessTokenFactory> factory;
+        private final TokenState scheduled;
+        private final long predictedUse;
+
+        private ScheduledRefresh(
+                AccessTokenFactory factory, TokenState scheduled, long predictedUse) {
+            this.factory = new WeakReference<>(factory);
+            this.scheduled = scheduled;
+            this.predictedUse = predictedUse;
+        }
+
+        @Override
+        public void run() {
+            AccessTokenFactory accessTokenFactory = factory.get();
+            if (accessTokenFactory != null) {
+                accessTokenFactory.scheduledRefresh(scheduled, predictedUse);
+            }
         }
-        currentThrottleTime = newNextThrottleTime;
     }
 }
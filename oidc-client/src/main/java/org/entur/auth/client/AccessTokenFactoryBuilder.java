@@ -1,6 +1,11 @@
 package org.entur.auth.client;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Supplier;
 import org.entur.auth.client.auth0.Auth0AccessTokenClient;
+import org.entur.auth.client.oidc.OidcAccessTokenClient;
+import org.entur.auth.client.oidc.OidcDiscovery;
 
 /**
  * Builder class for constructing an instance of {@link AccessTokenFactory}. This builder allows
@@ -8,14 +13,30 @@ import org.entur.auth.client.auth0.Auth0AccessTokenClient;
  * authentication credentials, and domain settings before constructing the factory.
  */
 public class AccessTokenFactoryBuilder {
+    private static final long DEFAULT_HEDGE_DELAY = 1000; // Milliseconds
+    private static final double DEFAULT_MAX_HEDGE_RATIO = 0.1;
 
     // Token refresh thresholds
     protected Long mustRefreshThreshold;
     protected Long shouldRefreshThreshold;
 
-    // Throttling settings
+    // Token refresh policy, replacing the thresholds, adapted to the authorization server, and
+    // jitter added to the policy
+    protected RefreshPolicy refreshPolicy;
+    protected Double refreshConfidence;
+    protected Double refreshJitter;
+
+    // Take the expiry from the exp claim of JWT access tokens
+    protected Boolean jwtExpiry;
+
+    // Only renew tokens in use, and retrieve tokens ahead of periodic use
+    protected Boolean trafficAwareRefresh;
+    protected Boolean fetchAhead;
+
+    // Throttling settings, or a backoff policy replacing them
     private Long minThrottleTime;
     private Long maxThrottleTime;
+    protected BackoffPolicy backoffPolicy;
 
     protected String domain;
     protected String realm;
@@ -23,6 +44,29 @@ public class AccessTokenFactoryBuilder {
     protected String clientSecret;
     protected String audience;
 
+    // Use the Auth0 SDK, or the JDK HTTP client, for Auth0 token requests
+    protected Boolean auth0Sdk;
+
+    // HTTP transport settings, shared by clients of the same domain
+    protected Long connectTimeout;
+    protected Long readTimeout;
+    protected Boolean http2;
+
+    // Share factories with the same credentials and settings within the JVM
+    protected Boolean shared;
+
+    // Persist the latest token, optionally encrypted with a Base64 encoded AES key
+    protected Path tokenSnapshotFile;
+    protected String tokenSnapshotKey;
+
+    // Share tokens with other nodes
+    protected TokenStore tokenStore;
+
+    // Hedge slow token requests
+    protected Long hedgeDelay;
+    protected Double hedgePercentile;
+    protected Double maxHedgeRatio;
+
     public long getMustRefreshThreshold() {
         return mustRefreshThreshold;
     }
@@ -41,6 +85,106 @@ public class AccessTokenFactoryBuilder {
         return this;
     }
 
+    public RefreshPolicy getRefreshPolicy() {
+        return refreshPolicy;
+    }
+
+    /**
+     * Sets the policy deciding when tokens are refreshed, for example {@link
+     * RefreshPolicy#lifetimeFraction(double)} for short-lived tokens. Can not be combined with
+     * refresh thresholds.
+     *
+     * @param refreshPolicy the policy, or null to use the refresh thresholds
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withRefreshPolicy(RefreshPolicy refreshPolicy) {
+        this.refreshPolicy = refreshPolicy;
+        return this;
+    }
+
+    public Double getRefreshConfidence() {
+        return refreshConfidence;
+    }
+
+    /**
+     * Starts background refreshes as late as the latency and failures of recent token requests
+     * allow, so the refresh completes before the must-refresh point with the given confidence, see
+     * {@link AdaptiveRefreshPolicy}.
+     *
+     * @param refreshConfidence probability between 0 and 1, for example 0.999, or null to refresh
+     *     at the fixed refresh point
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withRefreshConfidence(Double refreshConfidence) {
+        this.refreshConfidence = refreshConfidence;
+        return this;
+    }
+
+    public Double getRefreshJitter() {
+        return refreshJitter;
+    }
+
+    /**
+     * Moves background refreshes earlier by a random fraction chosen once per JVM, so instances
+     * started together do not request tokens at the same time, see {@link
+     * RefreshPolicy#withJitter(double)}.
+     *
+     * @param refreshJitter maximum fraction between 0 and 1, or null for no jitter
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withRefreshJitter(Double refreshJitter) {
+        this.refreshJitter = refreshJitter;
+        return this;
+    }
+
+    public Boolean getJwtExpiry() {
+        return jwtExpiry;
+    }
+
+    /**
+     * Takes the expiry of JWT access tokens from their {@code exp} claim instead of {@code
+     * expires_in}, see {@link AccessTokenFactory#setJwtExpiry(boolean)}.
+     *
+     * @param jwtExpiry true to use the expiry of the JWT, default false
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withJwtExpiry(Boolean jwtExpiry) {
+        this.jwtExpiry = jwtExpiry;
+        return this;
+    }
+
+    public Boolean getTrafficAwareRefresh() {
+        return trafficAwareRefresh;
+    }
+
+    /**
+     * Only renews tokens in the background if they have been used since they were retrieved, see
+     * {@link AccessTokenFactory#setTrafficAwareRefresh(boolean)}.
+     *
+     * @param trafficAwareRefresh true to let the tokens of idle clients lapse, default false
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withTrafficAwareRefresh(Boolean trafficAwareRefresh) {
+        this.trafficAwareRefresh = trafficAwareRefresh;
+        return this;
+    }
+
+    public Boolean getFetchAhead() {
+        return fetchAhead;
+    }
+
+    /**
+     * Retrieves tokens ahead of the predicted use of idle clients with periodic usage, see {@link
+     * AccessTokenFactory#setFetchAhead(boolean)}. Requires traffic-aware refresh.
+     *
+     * @param fetchAhead true to retrieve tokens ahead of periodic use, default false
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withFetchAhead(Boolean fetchAhead) {
+        this.fetchAhead = fetchAhead;
+        return this;
+    }
+
     public Long getMinThrottleTime() {
         return minThrottleTime;
     }
@@ -59,7 +203,48 @@ public class AccessTokenFactoryBuilder {
         return this;
     }
 
+    public BackoffPolicy getBackoffPolicy() {
+        return backoffPolicy;
+    }
+
+    /**
+     * Sets the policy deciding the backoff after failed token retrieval. By default, decorrelated
+     * jitter between the minimum and maximum throttle time is used, see {@link
+     * BackoffPolicy#decorrelatedJitter(Duration, Duration)}. Can not be combined with throttle
+     * times.
+     *
+     * @param backoffPolicy the policy, or null to use the throttle times
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withBackoffPolicy(BackoffPolicy backoffPolicy) {
+        this.backoffPolicy = backoffPolicy;
+        return this;
+    }
+
     protected void validateBuild() {
+        validateBuild(true);
+    }
+
+    private void validateBuild(boolean audienceRequired) {
+        if (refreshPolicy != null && (mustRefreshThreshold != null || shouldRefreshThreshold != null)) {
+            throw new IllegalArgumentException(
+                    "Please specify either refresh thresholds or a refresh policy");
+        }
+
+        if (refreshConfidence != null && (refreshConfidence <= 0 || refreshConfidence >= 1)) {
+            throw new IllegalArgumentException(
+                    "Please specify refresh confidence between 0 and 1 (exclusive)");
+        }
+
+        if (Boolean.TRUE.equals(fetchAhead) && !Boolean.TRUE.equals(trafficAwareRefresh)) {
+            throw new IllegalArgumentException(
+                    "Please enable traffic-aware refresh to retrieve tokens ahead of use");
+        }
+
+        if (refreshJitter != null && (refreshJitter < 0 || refreshJitter > 1)) {
+            throw new IllegalArgumentException("Please specify refresh jitter between 0 and 1");
+        }
+
         if (mustRefreshThreshold != null || shouldRefreshThreshold != null) {
             if (mustRefreshThreshold == null) {
                 throw new IllegalArgumentException("Please specify blocking refresh threshold");
@@ -75,6 +260,16 @@ public class AccessTokenFactoryBuilder {
             }
         }
 
+        if ((connectTimeout != null && connectTimeout <= 0)
+                || (readTimeout != null && readTimeout <= 0)) {
+            throw new IllegalArgumentException("Please specify positive HTTP timeouts");
+        }
+
+        if (backoffPolicy != null && (minThrottleTime != null || maxThrottleTime != null)) {
+            throw new IllegalArgumentException(
+                    "Please specify either throttle times or a backoff policy");
+        }
+
         if (minThrottleTime != null || maxThrottleTime != null) {
             if (minThrottleTime == null) {
                 throw new IllegalArgumentException("Please specify minimum throttle time");
@@ -98,20 +293,173 @@ public class AccessTokenFactoryBuilder {
         if (clientSecret == null) {
             throw new IllegalArgumentException("Please specify client secret");
         }
-        if (audience == null) {
+        if (audienceRequired && audience == null) {
             throw new IllegalArgumentException("Please specify audience");
         }
     }
 
+    /**
+     * Builds an AccessTokenFactory retrieving tokens from Auth0. Tokens are requested using the Auth0
+     * SDK unless {@link #withAuth0Sdk(Boolean)} is set to false, in which case the lightweight {@link
+     * OidcAccessTokenClient} is used and the Auth0 SDK may be excluded from the dependencies.
+     *
+     * @return a new AccessTokenFactory
+     */
     public AccessTokenFactory buildAuth0() {
         validateBuild();
-        AccessTokenClient client = new Auth0AccessTokenClient(domain, clientId, clientSecret, audience);
+        HttpTransportOptions options = transportOptions();
+        if (auth0Sdk == null || auth0Sdk) {
+            return build(
+                    "auth0-sdk",
+                    () ->
+                            new Auth0AccessTokenClient(
+                                    domain, clientId, clientSecret, audience, options));
+        }
+        return build(
+                "auth0",
+                () ->
+                        OidcAccessTokenClient.forAuth0(
+                                domain, clientId, clientSecret, audience, options));
+    }
+
+    /**
+     * Builds an AccessTokenFactory retrieving tokens from any OpenID Connect provider, such as
+     * Keycloak. The issuer is built from the domain and, if set, the realm ({@code
+     * https://<domain>/realms/<realm>/}), and the token endpoint is resolved from the discovery
+     * document of the issuer. The audience is optional.
+     *
+     * @return a new AccessTokenFactory
+     */
+    public AccessTokenFactory buildOidc() {
+        validateBuild(false);
+        HttpTransportOptions options = transportOptions();
+        return build(
+                "oidc",
+                () ->
+                        OidcAccessTokenClient.forIssuer(
+                                OidcDiscovery.issuer(domain, realm),
+                                clientId,
+                                clientSecret,
+                                audience,
+                                options));
+    }
+
+    private HttpTransportOptions transportOptions() {
+        HttpTransportOptions options = HttpTransportOptions.DEFAULT;
+        if (connectTimeout != null) {
+            options = options.withConnectTimeout(Duration.ofMillis(connectTimeout));
+        }
+        if (readTimeout != null) {
+            options = options.withReadTimeout(Duration.ofMillis(readTimeout));
+        }
+        if (http2 != null) {
+            options = options.withHttp2(http2);
+        }
+        return options;
+    }
+
+    /**
+     * Builds a factory, or returns the factory already built in this JVM with the same client type,
+     * credentials and settings if sharing is enabled with {@link #withShared(Boolean)}.
+     *
+     * @param clientType identifies the kind of client, so different clients never share a factory
+     * @param client creates the client of a new factory
+     * @return a new or shared AccessTokenFactory
+     */
+    private AccessTokenFactory build(String clientType, Supplier<AccessTokenClient> client) {
+        Supplier<AccessTokenFactory> factory =
+                () -> {
+                    AccessTokenFactory accessTokenFactory = build(hedged(client.get()));
+                    if (tokenStore != null) {
+                        accessTokenFactory.setTokenStore(tokenStore, credentialIdentity(clientType));
+                    }
+                    if (tokenSnapshotFile != null) {
+                        accessTokenFactory.setTokenSnapshotFile(createTokenSnapshotFile(clientType));
+                    }
+                    return accessTokenFactory;
+                };
+        if (!Boolean.TRUE.equals(shared)) {
+            return factory.get();
+        }
 
-        return build(client);
+        var key =
+                new SharedAccessTokenFactories.Key(
+                        clientType,
+                        domain,
+                        realm,
+                        clientId,
+                        SharedAccessTokenFactories.Key.digest(clientSecret),
+                        audience,
+                        mustRefreshThreshold,
+                        shouldRefreshThreshold,
+                        refreshPolicy,
+                        refreshConfidence,
+                        refreshJitter,
+                        jwtExpiry,
+                        trafficAwareRefresh,
+                        fetchAhead,
+                        minThrottleTime,
+                        maxThrottleTime,
+                        backoffPolicy,
+                        transportOptions(),
+                        tokenSnapshotFile,
+                        tokenSnapshotKey != null
+                                ? SharedAccessTokenFactories.Key.digest(tokenSnapshotKey)
+                                : null,
+                        tokenStore,
+                        hedgeDelay,
+                        hedgePercentile,
+                        maxHedgeRatio);
+        return SharedAccessTokenFactories.acquire(key, factory);
+    }
+
+    /**
+     * Wraps the client in a {@link HedgingAccessTokenClient} if hedging is enabled.
+     *
+     * @param client the client sending token requests
+     * @return the client to use in the factory
+     */
+    private AccessTokenClient hedged(AccessTokenClient client) {
+        if (hedgeDelay == null && hedgePercentile == null) {
+            return client;
+        }
+        return new HedgingAccessTokenClient(
+                client,
+                Duration.ofMillis(hedgeDelay != null ? hedgeDelay : DEFAULT_HEDGE_DELAY),
+                hedgePercentile != null ? hedgePercentile : 0,
+                maxHedgeRatio != null ? maxHedgeRatio : DEFAULT_MAX_HEDGE_RATIO);
+    }
+
+    private TokenSnapshotFile createTokenSnapshotFile(String clientType) {
+        return new TokenSnapshotFile(
+                tokenSnapshotFile,
+                credentialIdentity(clientType),
+                tokenSnapshotKey != null ? TokenSnapshotFile.aesKey(tokenSnapshotKey) : null);
+    }
+
+    /**
+     * Identifies the client credentials in token snapshots and token stores, without revealing the
+     * secret.
+     *
+     * @param clientType the kind of client
+     * @return a digest of the client type and credentials
+     */
+    private String credentialIdentity(String clientType) {
+        String identity =
+                String.join(
+                        "|",
+                        clientType,
+                        domain,
+                        String.valueOf(realm),
+                        clientId,
+                        String.valueOf(audience),
+                        clientSecret);
+        return SharedAccessTokenFactories.Key.digest(identity);
     }
 
     protected AccessTokenFactory build(AccessTokenClient client) {
         AccessTokenFactory accessTokenFactory = new AccessTokenFactory(client);
+        accessTokenFactory.setName(clientId);
 
         if (mustRefreshThreshold != null) {
             accessTokenFactory.setMustRefreshThreshold(mustRefreshThreshold);
@@ -119,16 +467,218 @@ public class AccessTokenFactoryBuilder {
         if (shouldRefreshThreshold != null) {
             accessTokenFactory.setShouldRefreshThreshold(shouldRefreshThreshold);
         }
+        if (refreshPolicy != null) {
+            accessTokenFactory.setRefreshPolicy(refreshPolicy);
+        }
+        if (refreshConfidence != null) {
+            long retryDelay =
+                    minThrottleTime != null
+                            ? minThrottleTime
+                            : accessTokenFactory.getMinThrottleTime();
+            accessTokenFactory.setRefreshPolicy(
+                    new AdaptiveRefreshPolicy(
+                            accessTokenFactory.getRefreshPolicy(),
+                            refreshConfidence,
+                            Duration.ofSeconds(retryDelay)));
+        }
+        if (refreshJitter != null) {
+            accessTokenFactory.setRefreshPolicy(
+                    accessTokenFactory.getRefreshPolicy().withJitter(refreshJitter));
+        }
+        if (jwtExpiry != null) {
+            accessTokenFactory.setJwtExpiry(jwtExpiry);
+        }
+        if (trafficAwareRefresh != null) {
+            accessTokenFactory.setTrafficAwareRefresh(trafficAwareRefresh);
+        }
+        if (fetchAhead != null) {
+            accessTokenFactory.setFetchAhead(fetchAhead);
+        }
         if (minThrottleTime != null) {
             accessTokenFactory.setMinThrottleTime(minThrottleTime);
         }
         if (maxThrottleTime != null) {
             accessTokenFactory.setMaxThrottleTime(maxThrottleTime);
         }
+        if (backoffPolicy != null) {
+            accessTokenFactory.setBackoffPolicy(backoffPolicy);
+        }
 
         return accessTokenFactory;
     }
 
+    public Boolean getAuth0Sdk() {
+        return auth0Sdk;
+    }
+
+    public AccessTokenFactoryBuilder withAuth0Sdk(Boolean auth0Sdk) {
+        this.auth0Sdk = auth0Sdk;
+        return this;
+    }
+
+    public Long getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the maximum time to establish a connection to the authorization server. Clients of the
+     * same domain and transport settings share their HTTP client and its connections. The Auth0 SDK
+     * rounds the timeout up to whole seconds.
+     *
+     * @param connectTimeout milliseconds, default 10 seconds
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withConnectTimeout(Long connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public Long getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the maximum time to wait for a response from the authorization server. The Auth0 SDK
+     * rounds the timeout up to whole seconds.
+     *
+     * @param readTimeout milliseconds, default 10 seconds
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withReadTimeout(Long readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    public Boolean getHttp2() {
+        return http2;
+    }
+
+    /**
+     * Sets whether HTTP/2 is used when the authorization server supports it. Only applies when the
+     * Auth0 SDK is not used.
+     *
+     * @param http2 false to use HTTP/1.1, default true
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withHttp2(Boolean http2) {
+        this.http2 = http2;
+        return this;
+    }
+
+    public Boolean getShared() {
+        return shared;
+    }
+
+    /**
+     * Sets whether the built factory is shared with other factories in the JVM having the same
+     * client type, credentials and settings. Shared factories have one token and one refresh, and
+     * keep renewing the token until every holder has closed the factory. Settings changed on a
+     * shared factory after it is built apply to every holder. Default false.
+     *
+     * @param shared true to share the factory, false or null to always build a separate factory
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withShared(Boolean shared) {
+        this.shared = shared;
+        return this;
+    }
+
+    public Path getTokenSnapshotFile() {
+        return tokenSnapshotFile;
+    }
+
+    /**
+     * Sets a file the latest token is persisted to, so a restarted application can reuse a token
+     * which is still valid. See {@link AccessTokenFactory#setTokenSnapshotFile(TokenSnapshotFile)}.
+     *
+     * @param tokenSnapshotFile the snapshot file, or null to not persist tokens
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withTokenSnapshotFile(Path tokenSnapshotFile) {
+        this.tokenSnapshotFile = tokenSnapshotFile;
+        return this;
+    }
+
+    public String getTokenSnapshotKey() {
+        return tokenSnapshotKey;
+    }
+
+    /**
+     * Sets a Base64 encoded AES key (16, 24 or 32 bytes) used to encrypt the token snapshot file.
+     *
+     * @param tokenSnapshotKey the key, or null to store the snapshot unencrypted
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withTokenSnapshotKey(String tokenSnapshotKey) {
+        this.tokenSnapshotKey = tokenSnapshotKey;
+        return this;
+    }
+
+    public TokenStore getTokenStore() {
+        return tokenStore;
+    }
+
+    /**
+     * Sets a store sharing tokens with other nodes, so only one node requests each token. See
+     * {@link AccessTokenFactory#setTokenStore(TokenStore, String)}.
+     *
+     * @param tokenStore the store, or null to not share tokens
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withTokenStore(TokenStore tokenStore) {
+        this.tokenStore = tokenStore;
+        return this;
+    }
+
+    public Long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * Enables hedging: a second token request is sent if the first has not completed within the
+     * given time, see {@link HedgingAccessTokenClient}.
+     *
+     * @param hedgeDelay time (in milliseconds) to wait before hedging, or null to disable hedging
+     *     unless a percentile is set. Default 1000 when only a percentile is set.
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withHedgeDelay(Long hedgeDelay) {
+        this.hedgeDelay = hedgeDelay;
+        return this;
+    }
+
+    public Double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * Enables hedging: a second token request is sent if the first has not completed within the
+     * given percentile of the latency of recent requests, see {@link HedgingAccessTokenClient}.
+     *
+     * @param hedgePercentile percentile between 0 and 1, for example 0.95, or null to only use the
+     *     hedge delay
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withHedgePercentile(Double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+        return this;
+    }
+
+    public Double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    /**
+     * Sets the maximum fraction of token requests which may be hedged requests. Default 0.1.
+     *
+     * @param maxHedgeRatio fraction between 0 and 1
+     * @return this builder
+     */
+    public AccessTokenFactoryBuilder withMaxHedgeRatio(Double maxHedgeRatio) {
+        this.maxHedgeRatio = maxHedgeRatio;
+        return this;
+    }
+
     public String getDomain() {
         return domain;
     }
@@ -0,0 +1,54 @@
+package org.entur.auth.client;
+
+/**
+ * Receives events of an {@link AccessTokenFactory}, for example to record metrics. Listeners are
+ * only called when a token is retrieved or callers have to wait for one, never on the path
+ * returning a valid cached token. They are called synchronously by the thread retrieving the token
+ * or waiting for it, so they must not block.
+ *
+ * @see AccessTokenFactory#addListener(AccessTokenListener)
+ */
+public interface AccessTokenListener {
+
+    /** Reason for starting a token refresh. */
+    enum RefreshCause {
+        /** No token has been retrieved yet. */
+        INITIAL,
+        /** Background renewal scheduled before the token reaches the should-refresh threshold. */
+        SCHEDULED,
+        /** A caller found the token past the should-refresh threshold. */
+        SHOULD_REFRESH,
+        /** A caller found the token past the must-refresh threshold, and waits for the new token. */
+        MUST_REFRESH
+    }
+
+    /**
+     * Called when a refresh is started. Concurrent callers joining a running refresh do not start a
+     * new one.
+     *
+     * @param cause the reason for the refresh
+     */
+    default void refreshStarted(RefreshCause cause) {}
+
+    /**
+     * Called when a token has been retrieved from the authorization server.
+     *
+     * @param durationNanos the time taken by the request
+     */
+    default void tokenFetched(long durationNanos) {}
+
+    /**
+     * Called when a token could not be retrieved from the authorization server.
+     *
+     * @param durationNanos the time taken by the request
+     * @param cause the reason for the failure
+     */
+    default void tokenFetchFailed(long durationNanos, Exception cause) {}
+
+    /**
+     * Called when a caller has waited for a refresh to complete.
+     *
+     * @param durationNanos the time the caller waited
+     */
+    default void blockingWaitCompleted(long durationNanos) {}
+}
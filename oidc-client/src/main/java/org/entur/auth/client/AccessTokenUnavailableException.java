@@ -7,4 +7,24 @@ public class AccessTokenUnavailableException extends RuntimeException {
     public AccessTokenUnavailableException() {
         super();
     }
+
+    /**
+     * Constructs a new {@code AccessTokenUnavailableException} with the given detail message.
+     *
+     * @param message the detail message
+     */
+    public AccessTokenUnavailableException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructs a new {@code AccessTokenUnavailableException} with the given detail message and
+     * cause.
+     *
+     * @param message the detail message
+     * @param cause the cause of the token being unavailable
+     */
+    public AccessTokenUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
@@ -1,6 +1,13 @@
 package org.entur.auth.client;
 
-/** Wrapper for an access token that tracks its creation time, expiration, and refresh threshold. */
+/**
+ * Wrapper for an access token that tracks its creation time, expiration, and refresh threshold.
+ *
+ * @deprecated the age of the token is taken from the wall clock, which may be adjusted while the
+ *     token is in use. Use {@link IssuedToken}, which tracks the expiry with {@link
+ *     System#nanoTime()}.
+ */
+@Deprecated
 public class AccessTokenWrapper {
     private final TokenHolder tokenHolder;
     private final long tokenCrateTimestamp; // Timestamp when the token was created
@@ -0,0 +1,146 @@
+package org.entur.auth.client;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * {@link RefreshPolicy} starting the background refresh as late as possible while still finishing
+ * before the must-refresh point of another policy with the given confidence, so callers rarely
+ * wait for a token and tokens are not renewed earlier than needed.
+ *
+ * <p>The policy keeps a profile of the latency and failures of recent token requests, and must be
+ * added as a listener of the factory, which {@link AccessTokenFactory#setRefreshPolicy} does. The
+ * lead time before the must-refresh point covers enough attempts to succeed with the given
+ * confidence at the recent failure rate, each taking the latency percentile of the confidence,
+ * plus the delay between attempts. The refresh never starts before half of the time until the
+ * must-refresh point has passed. Until enough requests have been observed, the refresh point of the
+ * other policy is used.
+ */
+public final class AdaptiveRefreshPolicy implements RefreshPolicy, AccessTokenListener {
+    private static final int SAMPLES = 64;
+    private static final int MIN_SAMPLES = 8;
+    private static final int MAX_ATTEMPTS = 10;
+
+    /** Minimum lead time (millis), covering the resolution of the refresh scheduler. */
+    private static final long MIN_LEAD_TIME = 2000;
+
+    private final RefreshPolicy policy;
+    private final double confidence;
+    private final long retryDelay;
+
+    /** Latency (nanos) of recent requests, successful or not, guarded by this. */
+    private final long[] latencies = new long[SAMPLES];
+
+    /** Whether each of the recent requests failed, guarded by this. */
+    private final boolean[] failures = new boolean[SAMPLES];
+
+    private int sampleCount; // Guarded by this
+    private int nextSample; // Guarded by this
+
+    /**
+     * Constructs an adaptive policy.
+     *
+     * @param policy the policy deciding the must-refresh point, and the refresh point until enough
+     *     requests have been observed
+     * @param confidence probability (between 0 and 1, exclusive) that the refresh has completed
+     *     before the must-refresh point
+     * @param retryDelay expected time between a failed attempt and the next one, usually the
+     *     minimum backoff of the factory
+     */
+    public AdaptiveRefreshPolicy(RefreshPolicy policy, double confidence, Duration retryDelay) {
+        if (confidence <= 0 || confidence >= 1) {
+            throw new IllegalArgumentException("Refresh confidence must be between 0 and 1");
+        }
+        this.policy = policy;
+        this.confidence = confidence;
+        this.retryDelay = retryDelay.toMillis();
+    }
+
+    @Override
+    public long refreshAt(long receivedAt, long expiresAt) {
+        long leadTime = getLeadTime();
+        if (leadTime < 0) {
+            return policy.refreshAt(receivedAt, expiresAt);
+        }
+        long mustRefreshAt = policy.mustRefreshAt(receivedAt, expiresAt);
+        long earliest = receivedAt + Math.max(0, mustRefreshAt - receivedAt) / 2;
+        return Math.min(mustRefreshAt, Math.max(earliest, mustRefreshAt - leadTime));
+    }
+
+    @Override
+    public long mustRefreshAt(long receivedAt, long expiresAt) {
+        return policy.mustRefreshAt(receivedAt, expiresAt);
+    }
+
+    @Override
+    public void tokenFetched(long durationNanos) {
+        record(durationNanos, false);
+    }
+
+    @Override
+    public void tokenFetchFailed(long durationNanos, Exception cause) {
+        record(durationNanos, true);
+    }
+
+    /**
+     * Gets the policy deciding the must-refresh point.
+     *
+     * @return the other policy
+     */
+    public RefreshPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the time between the background refresh and the must-refresh point, based on recent
+     * requests.
+     *
+     * @return lead time (millis), or -1 if not enough requests have been observed
+     */
+    public long getLeadTime() {
+        long[] samples;
+        int failed = 0;
+        synchronized (this) {
+            if (sampleCount < MIN_SAMPLES) {
+                return -1;
+            }
+            samples = Arrays.copyOf(latencies, sampleCount);
+            for (int i = 0; i < sampleCount; i++) {
+                if (failures[i]) {
+                    failed++;
+                }
+            }
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(confidence * samples.length) - 1;
+        long latency = Duration.ofNanos(samples[Math.max(0, index)]).toMillis();
+
+        int attempts = attempts((double) failed / samples.length);
+        return MIN_LEAD_TIME + attempts * latency + (attempts - 1) * retryDelay;
+    }
+
+    /**
+     * Gets the number of attempts needed for at least one to succeed with the configured
+     * confidence.
+     *
+     * @param failureRate the fraction of recent requests which failed
+     * @return the number of attempts, at most {@value #MAX_ATTEMPTS}
+     */
+    private int attempts(double failureRate) {
+        if (failureRate == 0) {
+            return 1;
+        }
+        if (failureRate >= 1) {
+            return MAX_ATTEMPTS;
+        }
+        double attempts = Math.ceil(Math.log(1 - confidence) / Math.log(failureRate));
+        return (int) Math.max(1, Math.min(MAX_ATTEMPTS, attempts));
+    }
+
+    private synchronized void record(long latencyNanos, boolean failed) {
+        latencies[nextSample] = latencyNanos;
+        failures[nextSample] = failed;
+        nextSample = (nextSample + 1) % SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, SAMPLES);
+    }
+}
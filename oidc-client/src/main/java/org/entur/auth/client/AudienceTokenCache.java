@@ -0,0 +1,182 @@
+package org.entur.auth.client;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tokens of an {@link AccessTokenFactory} for other audiences and scopes than its default token.
+ *
+ * <p>Each {@link TokenKey} has its own token factory with its own expiry, refresh and background
+ * renewal, while all of them share the client, and so the HTTP client, of the parent factory. The
+ * number of keys is bounded: when the maximum size is reached, the least recently used key is
+ * evicted, and keys which have not been used within the idle timeout are evicted by a periodic
+ * sweep on the shared {@link RefreshScheduler}. Evicted factories stop renewing their token.
+ */
+final class AudienceTokenCache {
+    private static final Logger log = LoggerFactory.getLogger(AudienceTokenCache.class);
+
+    /** Last access is only recorded when it has changed by more than this, to avoid writes. */
+    private static final long ACCESS_GRANULARITY_MILLIS = 1000;
+
+    private static final long MIN_SWEEP_INTERVAL_MILLIS = 1000;
+
+    private final AccessTokenFactory parent;
+    private final int maximumSize;
+    private final long idleTimeoutMillis;
+    private final Map<TokenKey, Entry> entries = new ConcurrentHashMap<>();
+    private boolean sweepScheduled; // Guarded by this
+    private volatile boolean closed;
+
+    AudienceTokenCache(AccessTokenFactory parent, int maximumSize, long idleTimeoutMillis) {
+        this.parent = parent;
+        this.maximumSize = maximumSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Gets the token factory for a key, creating it if needed.
+     *
+     * @param key the audience and scopes
+     * @return the token factory for the key
+     * @throws UnsupportedOperationException if the client does not support other audiences or scopes
+     */
+    AccessTokenFactory get(TokenKey key) {
+        long now = parent.clock.millis();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = create(key, now);
+        } else if (now - entry.lastAccess > ACCESS_GRANULARITY_MILLIS) {
+            entry.lastAccess = now;
+        }
+        return entry.factory;
+    }
+
+    private Entry create(TokenKey key, long now) {
+        AccessTokenClient client = parent.getClient();
+        if (!client.supportsAudiencesAndScopes()) {
+            throw new UnsupportedOperationException(
+                    "Requesting tokens for other audiences or scopes is not supported by "
+                            + client.getClass());
+        }
+
+        Entry created =
+                entries.computeIfAbsent(
+                        key, k -> new Entry(parent.createDerived(new Client(client, k)), now));
+
+        if (entries.size() > maximumSize) {
+            evictLeastRecentlyUsed(created);
+        }
+        scheduleSweep();
+        return created;
+    }
+
+    private void evictLeastRecentlyUsed(Entry keep) {
+        Map.Entry<TokenKey, Entry> eldest = null;
+        for (Map.Entry<TokenKey, Entry> entry : entries.entrySet()) {
+            if (entry.getValue() != keep
+                    && (eldest == null || entry.getValue().lastAccess < eldest.getValue().lastAccess)) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            evict(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void evict(TokenKey key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            log.debug("Evicting token for {}", key);
+            entry.factory.close();
+        }
+    }
+
+    /** Evicts idle keys, and schedules the next sweep while there are keys left. */
+    private void sweep() {
+        long idleSince = parent.clock.millis() - idleTimeoutMillis;
+        entries.forEach(
+                (key, entry) -> {
+                    if (entry.lastAccess <= idleSince) {
+                        evict(key, entry);
+                    }
+                });
+
+        synchronized (this) {
+            sweepScheduled = false;
+        }
+        if (!entries.isEmpty()) {
+            scheduleSweep();
+        }
+    }
+
+    private synchronized void scheduleSweep() {
+        if (sweepScheduled || closed) {
+            return;
+        }
+        sweepScheduled = true;
+        RefreshScheduler.getInstance()
+                .schedule(new Sweep(this), Math.max(MIN_SWEEP_INTERVAL_MILLIS, idleTimeoutMillis / 2));
+    }
+
+    /** Evicts all keys. */
+    void close() {
+        closed = true;
+        entries.forEach(this::evict);
+    }
+
+    private static final class Entry {
+        private final AccessTokenFactory factory;
+        private volatile long lastAccess; // Epoch millis
+
+        private Entry(AccessTokenFactory factory, long lastAccess) {
+            this.factory = factory;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /** Sweep task, only holding a weak reference to the cache, like the scheduled renewals. */
+    private static final class Sweep implements Runnable {
+        private final WeakReference<AudienceTokenCache> cache;
+
+        private Sweep(AudienceTokenCache cache) {
+            this.cache = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void run() {
+            AudienceTokenCache audienceTokenCache = cache.get();
+            if (audienceTokenCache != null && !audienceTokenCache.closed) {
+                audienceTokenCache.sweep();
+            }
+        }
+    }
+
+    /** Client requesting tokens for one key through the client of the parent factory. */
+    private static final class Client implements AccessTokenClient {
+        private final AccessTokenClient client;
+        private final TokenKey key;
+
+        private Client(AccessTokenClient client, TokenKey key) {
+            this.client = client;
+            this.key = key;
+        }
+
+        @Override
+        public TokenHolder requestAccessToken() throws IOException {
+            return client.requestAccessToken(key.getAudience(), key.getScope());
+        }
+
+        @Override
+        public TokenHolder renewAccessToken(String refreshToken) throws IOException {
+            return client.renewAccessToken(refreshToken);
+        }
+
+        @Override
+        public void revokeRefreshToken(String refreshToken) throws IOException {
+            client.revokeRefreshToken(refreshToken);
+        }
+    }
+}
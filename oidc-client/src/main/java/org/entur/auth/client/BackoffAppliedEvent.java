@@ -0,0 +1,28 @@
+package org.entur.auth.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** JFR event for a backoff after failed token retrieval. */
+@Name("org.entur.auth.client.BackoffApplied")
+@Label("Backoff Applied")
+@Category({"OIDC Auth Client"})
+@Description("Token retrieval failed, and will not be retried before the throttle time has passed")
+@StackTrace(false)
+final class BackoffAppliedEvent extends Event {
+    @Label("Client")
+    String client;
+
+    @Label("Throttle Time")
+    @Timespan(Timespan.MILLISECONDS)
+    long throttleTime;
+
+    @Label("Token Available")
+    @Description("Whether the previous token is still used until the retry")
+    boolean tokenAvailable;
+}
@@ -0,0 +1,99 @@
+package org.entur.auth.client;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how long to wait before retrying after token retrieval has failed. Callers are not sent
+ * to the authorization server while waiting, but keep using the previous token if it has not
+ * expired.
+ *
+ * <p>If the authorization server tells how long to wait, for example with the {@code Retry-After}
+ * header of a HTTP 429 response, the client reports it with a {@link RetryAfterException}, and the
+ * built-in policies do not retry earlier than that, even if it is longer than their maximum delay.
+ *
+ * @see AccessTokenFactory#setBackoffPolicy(BackoffPolicy)
+ */
+public interface BackoffPolicy {
+
+    /**
+     * Gets the time to wait before the next attempt.
+     *
+     * @param previousDelay the delay (millis) after the previous failure, or 0 if the previous
+     *     attempt succeeded
+     * @param retryAfter the time to wait requested by the authorization server, or null
+     * @return the delay (millis)
+     */
+    long nextDelay(long previousDelay, Duration retryAfter);
+
+    /**
+     * Doubles the delay after each failure, from the minimum to the maximum delay. All instances
+     * failing at the same time retry at the same time.
+     *
+     * @param minDelay the delay after the first failure
+     * @param maxDelay the maximum delay
+     * @return an exponential backoff policy
+     */
+    static BackoffPolicy exponential(Duration minDelay, Duration maxDelay) {
+        return new Exponential(minDelay.toMillis(), maxDelay.toMillis());
+    }
+
+    /**
+     * Waits a random time between the base delay and three times the previous delay, up to the
+     * maximum delay. The delay grows like exponential backoff, while instances failing at the same
+     * time spread their retries, so a recovering authorization server is not hit by all instances
+     * at once.
+     *
+     * @param baseDelay the minimum delay
+     * @param maxDelay the maximum delay
+     * @return a backoff policy with decorrelated jitter
+     */
+    static BackoffPolicy decorrelatedJitter(Duration baseDelay, Duration maxDelay) {
+        return new DecorrelatedJitter(baseDelay.toMillis(), maxDelay.toMillis());
+    }
+
+    /**
+     * Applies the delay requested by the authorization server. The maximum delay of the policy does
+     * not apply, since a retry before the requested time would be rejected again.
+     *
+     * @param delay the delay chosen by the policy (millis)
+     * @param retryAfter the requested delay, or null
+     * @return the delay (millis)
+     */
+    private static long respect(long delay, Duration retryAfter) {
+        if (retryAfter == null) {
+            return delay;
+        }
+        return Math.max(delay, retryAfter.toMillis());
+    }
+
+    /**
+     * Doubles the delay after each failure.
+     *
+     * @param minDelay the delay after the first failure (millis)
+     * @param maxDelay the maximum delay (millis)
+     */
+    record Exponential(long minDelay, long maxDelay) implements BackoffPolicy {
+        @Override
+        public long nextDelay(long previousDelay, Duration retryAfter) {
+            long delay = previousDelay == 0 ? minDelay : Math.min(maxDelay, previousDelay * 2);
+            return respect(delay, retryAfter);
+        }
+    }
+
+    /**
+     * Waits a random time between the base delay and three times the previous delay.
+     *
+     * @param baseDelay the minimum delay (millis)
+     * @param maxDelay the maximum delay (millis)
+     */
+    record DecorrelatedJitter(long baseDelay, long maxDelay) implements BackoffPolicy {
+        @Override
+        public long nextDelay(long previousDelay, Duration retryAfter) {
+            long previous = Math.max(baseDelay, previousDelay);
+            long upper = Math.max(baseDelay, Math.min(maxDelay, previous * 3));
+            long delay = ThreadLocalRandom.current().nextLong(baseDelay, upper + 1);
+            return respect(Math.min(maxDelay, delay), retryAfter);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.entur.auth.client;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import javax.crypto.SecretKey;
+
+/**
+ * {@link TokenStore} keeping tokens in files in a directory shared by all nodes, such as a shared
+ * volume. Each key has a token file, replaced atomically and optionally encrypted (see {@link
+ * TokenSnapshotFile}), and a lock file. The lease is an exclusive lock on the lock file, which the
+ * operating system releases if the node holding it dies.
+ *
+ * <p>The lease duration is not enforced by this store, since a file lock can not expire while its
+ * holder is alive; the lease is released when the token has been requested.
+ */
+public class FileLockTokenStore implements TokenStore {
+    private final Path directory;
+    private final SecretKey key;
+
+    /**
+     * Constructs a store with unencrypted token files.
+     *
+     * @param directory the shared directory
+     */
+    public FileLockTokenStore(Path directory) {
+        this(directory, null);
+    }
+
+    /**
+     * Constructs a store.
+     *
+     * @param directory the shared directory
+     * @param key AES key used to encrypt the token files, or null to store them unencrypted
+     */
+    public FileLockTokenStore(Path directory, SecretKey key) {
+        this.directory = directory;
+        this.key = key;
+    }
+
+    @Override
+    public StoredToken get(String key) {
+        TokenSnapshotFile.Snapshot snapshot = tokenFile(key).read();
+        return snapshot == null
+                ? null
+                : new StoredToken(snapshot.accessToken(), snapshot.expiresAt());
+    }
+
+    @Override
+    public Lease tryAcquireLease(String key, Duration duration) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel channel =
+                FileChannel.open(
+                        directory.resolve(key + ".lock"),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            lock = null; // Held by another factory in this JVM
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        if (lock != null) {
+            return new FileLease(channel, lock);
+        }
+        channel.close();
+        return null;
+    }
+
+    @Override
+    public void put(String key, StoredToken token, Lease lease) throws IOException {
+        if (!(lease instanceof FileLease fileLease) || !fileLease.lock.isValid()) {
+            throw new IllegalStateException("Lease for " + key + " is not held");
+        }
+        tokenFile(key).write(token.accessToken(), token.expiresAt());
+    }
+
+    private TokenSnapshotFile tokenFile(String key) {
+        return new TokenSnapshotFile(directory.resolve(key + ".token"), key, this.key);
+    }
+
+    private static final class FileLease implements Lease {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private FileLease(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lock.release();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
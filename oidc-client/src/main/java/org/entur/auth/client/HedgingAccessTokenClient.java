@@ -0,0 +1,277 @@
+package org.entur.auth.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link AccessTokenClient} decorator sending a second, hedged request when a token request has
+ * not completed in time, to cut the tail latency of the authorization server. The first successful
+ * response is used and the other request is cancelled.
+ *
+ * <p>A request is hedged after a fixed delay, or after the given percentile of the latency of
+ * recent requests once enough requests have been observed. Hedges are limited to a fraction of all
+ * requests sent to the authorization server, so a slow server does not receive twice the load: each
+ * request adds that fraction of a hedge to a budget, and each hedge takes a whole one. The budget
+ * starts with one hedge, so the first slow request can be hedged too.
+ * Refresh tokens are renewed and revoked without hedging.
+ *
+ * <p>Cancelling the request which lost interrupts its thread, but not every HTTP client aborts the
+ * request when interrupted, so the thread may stay busy until the read timeout. The number of
+ * requests running on the shared hedging threads is therefore limited. When the limit is reached,
+ * requests are sent on the calling thread without hedging, and no hedged requests are sent.
+ */
+public final class HedgingAccessTokenClient implements AccessTokenClient {
+    private static final Logger log = LoggerFactory.getLogger(HedgingAccessTokenClient.class);
+
+    private static final int LATENCY_SAMPLES = 64;
+    private static final int MIN_LATENCY_SAMPLES = 8;
+
+    /** Hedges which may be sent before any requests have added to the budget, also the maximum. */
+    private static final double MAX_HEDGE_BUDGET = 1;
+
+    /** Maximum number of requests running on the hedging threads of the JVM. */
+    static final int MAX_RUNNING_REQUESTS =
+            Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+    private static final Semaphore RUNNING_REQUESTS = new Semaphore(MAX_RUNNING_REQUESTS);
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newCachedThreadPool(RefreshScheduler.daemonThreadFactory("oidc-token-hedge-"));
+
+    private final AccessTokenClient client;
+    private final long hedgeDelayNanos;
+    private final double hedgePercentile;
+    private final double maxHedgeRatio;
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private double hedgeBudget; // Guarded by this
+
+    /** Latency (nanos) of recent successful requests, guarded by this. */
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private int latencyCount; // Guarded by this
+    private int nextLatency; // Guarded by this
+
+    /**
+     * Constructs a hedging client.
+     *
+     * @param client the client sending the requests
+     * @param hedgeDelay time to wait for a response before sending a hedged request, also used until
+     *     enough requests have been observed to use the percentile
+     * @param hedgePercentile percentile (between 0 and 1) of recent latencies to wait before sending
+     *     a hedged request, or 0 to always use the fixed delay
+     * @param maxHedgeRatio maximum fraction (between 0 and 1) of requests to the authorization server
+     *     which may be hedged requests
+     */
+    public HedgingAccessTokenClient(
+            AccessTokenClient client,
+            Duration hedgeDelay,
+            double hedgePercentile,
+            double maxHedgeRatio) {
+        if (hedgePercentile < 0 || hedgePercentile > 1) {
+            throw new IllegalArgumentException("Hedge percentile must be between 0 and 1");
+        }
+        if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+            throw new IllegalArgumentException("Maximum hedge ratio must be between 0 and 1");
+        }
+        this.client = client;
+        this.hedgeDelayNanos = hedgeDelay.toNanos();
+        this.hedgePercentile = hedgePercentile;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.hedgeBudget = maxHedgeRatio > 0 ? MAX_HEDGE_BUDGET : 0;
+    }
+
+    @Override
+    public TokenHolder requestAccessToken() throws IOException {
+        return hedged(client::requestAccessToken);
+    }
+
+    @Override
+    public TokenHolder requestAccessToken(String audience, String scope) throws IOException {
+        return hedged(() -> client.requestAccessToken(audience, scope));
+    }
+
+    @Override
+    public boolean supportsAudiencesAndScopes() {
+        return client.supportsAudiencesAndScopes();
+    }
+
+    @Override
+    public TokenHolder renewAccessToken(String refreshToken) throws IOException {
+        return client.renewAccessToken(refreshToken);
+    }
+
+    @Override
+    public void revokeRefreshToken(String refreshToken) throws IOException {
+        client.revokeRefreshToken(refreshToken);
+    }
+
+    /**
+     * Gets the client sending the requests.
+     *
+     * @return the decorated client
+     */
+    public AccessTokenClient getClient() {
+        return client;
+    }
+
+    /**
+     * Gets the number of hedged requests sent so far.
+     *
+     * @return the number of hedged requests
+     */
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    private TokenHolder hedged(Request request) throws IOException {
+        addHedgeBudget();
+        if (!RUNNING_REQUESTS.tryAcquire()) {
+            log.debug("All hedging threads are busy, sending token request without hedging");
+            return request.send();
+        }
+
+        CompletableFuture<TokenHolder> result = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        Future<?> primary = start(request, result, running);
+        Future<?> hedge = null;
+        try {
+            try {
+                return result.get(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ex) {
+                if (!result.isDone() && RUNNING_REQUESTS.tryAcquire()) {
+                    if (tryAcquireHedge()) {
+                        log.debug("Token request is slow, sending hedged request");
+                        running.incrementAndGet();
+                        hedge = start(request, result, running);
+                    } else {
+                        RUNNING_REQUESTS.release();
+                    }
+                }
+            }
+            return result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for token");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Token request failed", ex.getCause());
+        } finally {
+            // Cancels the request which lost, or both if the caller gave up
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Starts a request, holding a permit of the running requests which is released when the request
+     * has completed, or when it is cancelled before it has started. The first successful request
+     * completes the result, while the result only fails when all running requests have failed.
+     */
+    private Future<?> start(
+            Request request, CompletableFuture<TokenHolder> result, AtomicInteger running) {
+        AtomicBoolean started = new AtomicBoolean();
+        FutureTask<Void> task =
+                new FutureTask<>(
+                        () -> {
+                            if (!started.compareAndSet(false, true)) {
+                                return;
+                            }
+                            long start = System.nanoTime();
+                            try {
+                                TokenHolder tokenHolder = request.send();
+                                recordLatency(System.nanoTime() - start);
+                                result.complete(tokenHolder);
+                            } catch (Exception ex) {
+                                if (running.decrementAndGet() == 0) {
+                                    result.completeExceptionally(ex);
+                                }
+                            } finally {
+                                RUNNING_REQUESTS.release();
+                            }
+                        },
+                        null) {
+                    @Override
+                    protected void done() {
+                        if (started.compareAndSet(false, true)) {
+                            // Cancelled before it started
+                            RUNNING_REQUESTS.release();
+                        }
+                    }
+                };
+        EXECUTOR.execute(task);
+        return task;
+    }
+
+    /** Adds the share of a request sent to the authorization server to the hedge budget. */
+    private synchronized void addHedgeBudget() {
+        hedgeBudget = Math.min(MAX_HEDGE_BUDGET, hedgeBudget + maxHedgeRatio);
+    }
+
+    /**
+     * Reserves a hedge if the budget allows it.
+     *
+     * @return true if a hedged request may be sent
+     */
+    private synchronized boolean tryAcquireHedge() {
+        if (hedgeBudget < 1) {
+            return false;
+        }
+        hedgeBudget -= 1;
+        hedges.incrementAndGet();
+        addHedgeBudget(); // The hedge is a request too
+        return true;
+    }
+
+    private long hedgeDelayNanos() {
+        if (hedgePercentile == 0) {
+            return hedgeDelayNanos;
+        }
+
+        long[] samples;
+        synchronized (this) {
+            if (latencyCount < MIN_LATENCY_SAMPLES) {
+                return hedgeDelayNanos;
+            }
+            samples = Arrays.copyOf(latencies, latencyCount);
+        }
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(hedgePercentile * samples.length) - 1;
+        return samples[Math.max(0, Math.min(samples.length - 1, index))];
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+        latencies[nextLatency] = latencyNanos;
+        nextLatency = (nextLatency + 1) % LATENCY_SAMPLES;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        TokenHolder send() throws IOException;
+    }
+}
@@ -0,0 +1,58 @@
+package org.entur.auth.client;
+
+import java.time.Duration;
+
+/**
+ * Settings of the HTTP transport used to request tokens. Clients with the same authorization server
+ * domain and the same settings share one transport, so they share its connections and threads.
+ *
+ * @param connectTimeout maximum time to establish a connection
+ * @param readTimeout maximum time to wait for a response
+ * @param http2 true to use HTTP/2 when the server supports it, false to use HTTP/1.1. Only applies
+ *     to the JDK HTTP client, the Auth0 SDK negotiates the protocol itself.
+ */
+public record HttpTransportOptions(Duration connectTimeout, Duration readTimeout, boolean http2) {
+
+    /** Default settings, a connect and read timeout of 10 seconds, using HTTP/2. */
+    public static final HttpTransportOptions DEFAULT =
+            new HttpTransportOptions(Duration.ofSeconds(10), Duration.ofSeconds(10), true);
+
+    public HttpTransportOptions {
+        if (connectTimeout.isNegative() || connectTimeout.isZero()) {
+            throw new IllegalArgumentException("Connect timeout must be positive");
+        }
+        if (readTimeout.isNegative() || readTimeout.isZero()) {
+            throw new IllegalArgumentException("Read timeout must be positive");
+        }
+    }
+
+    /**
+     * Gets a copy of these settings with another connect timeout.
+     *
+     * @param connectTimeout maximum time to establish a connection
+     * @return the new settings
+     */
+    public HttpTransportOptions withConnectTimeout(Duration connectTimeout) {
+        return new HttpTransportOptions(connectTimeout, readTimeout, http2);
+    }
+
+    /**
+     * Gets a copy of these settings with another read timeout.
+     *
+     * @param readTimeout maximum time to wait for a response
+     * @return the new settings
+     */
+    public HttpTransportOptions withReadTimeout(Duration readTimeout) {
+        return new HttpTransportOptions(connectTimeout, readTimeout, http2);
+    }
+
+    /**
+     * Gets a copy of these settings with or without HTTP/2.
+     *
+     * @param http2 true to use HTTP/2 when the server supports it
+     * @return the new settings
+     */
+    public HttpTransportOptions withHttp2(boolean http2) {
+        return new HttpTransportOptions(connectTimeout, readTimeout, http2);
+    }
+}
@@ -0,0 +1,56 @@
+package org.entur.auth.client;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link TokenStore} keeping tokens and leases in memory. Shares tokens between factories and
+ * application contexts within one JVM, and is useful for testing the behavior of a shared store
+ * locally.
+ */
+public class InMemoryTokenStore implements TokenStore {
+    private final Map<String, StoredToken> tokens = new ConcurrentHashMap<>();
+    private final Map<String, MemoryLease> leases = new ConcurrentHashMap<>();
+
+    @Override
+    public StoredToken get(String key) {
+        return tokens.get(key);
+    }
+
+    @Override
+    public Lease tryAcquireLease(String key, Duration duration) {
+        MemoryLease lease = new MemoryLease(key, System.nanoTime() + duration.toNanos());
+        MemoryLease current =
+                leases.compute(
+                        key,
+                        (k, existing) ->
+                                existing == null || System.nanoTime() - existing.expiresAt >= 0
+                                        ? lease
+                                        : existing);
+        return current == lease ? lease : null;
+    }
+
+    @Override
+    public void put(String key, StoredToken token, Lease lease) {
+        if (leases.get(key) != lease) {
+            throw new IllegalStateException("Lease for " + key + " is not held");
+        }
+        tokens.put(key, token);
+    }
+
+    private final class MemoryLease implements Lease {
+        private final String key;
+        private final long expiresAt; // System.nanoTime()
+
+        private MemoryLease(String key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public void close() {
+            leases.remove(key, this);
+        }
+    }
+}
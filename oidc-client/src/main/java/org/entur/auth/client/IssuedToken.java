@@ -0,0 +1,100 @@
+package org.entur.auth.client;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compact, immutable {@link TokenHolder} for a token retrieved from an authorization server. Only
+ * the token strings and primitive points in time are kept, so no response objects of the client
+ * library stay reachable.
+ *
+ * <p>The expiry is kept both as epoch millis, to be persisted or shared with other nodes, and as a
+ * {@link System#nanoTime()} deadline, so the remaining lifetime is not affected when the wall clock
+ * is adjusted.
+ *
+ * @param accessToken the access token
+ * @param refreshToken the refresh token, or null
+ * @param expiresAt the expiry (epoch millis)
+ * @param expiresAtNanos the expiry as a {@link System#nanoTime()} value
+ * @param authorizationHeader the pre-encoded Authorization header value, or null to build it when
+ *     the token is used
+ */
+public record IssuedToken(
+        String accessToken,
+        String refreshToken,
+        long expiresAt,
+        long expiresAtNanos,
+        String authorizationHeader)
+        implements TokenHolder {
+
+    /**
+     * Creates a token received now.
+     *
+     * @param accessToken the access token
+     * @param refreshToken the refresh token, or null
+     * @param expiresIn the lifetime (in seconds) of the access token
+     * @return the token
+     */
+    public static IssuedToken of(String accessToken, String refreshToken, long expiresIn) {
+        long lifetimeMillis = TimeUnit.SECONDS.toMillis(expiresIn);
+        return new IssuedToken(
+                accessToken,
+                refreshToken,
+                System.currentTimeMillis() + lifetimeMillis,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lifetimeMillis),
+                null);
+    }
+
+    /**
+     * Gets a copy of this token with the Authorization header value built, so it is not built when
+     * the token is used.
+     *
+     * @return the token with a pre-encoded Authorization header
+     */
+    public IssuedToken withAuthorizationHeader() {
+        if (authorizationHeader != null || accessToken == null) {
+            return this;
+        }
+        return new IssuedToken(
+                accessToken,
+                refreshToken,
+                expiresAt,
+                expiresAtNanos,
+                TokenState.BEARER_PREFIX + accessToken);
+    }
+
+    /**
+     * Checks whether the token has expired, by the monotonic clock.
+     *
+     * @return true if the token has expired
+     */
+    public boolean isExpired() {
+        return System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * Gets the remaining lifetime of the token, by the monotonic clock, rounded to whole seconds.
+     *
+     * @return seconds until the token expires, or 0 if it has expired
+     */
+    @Override
+    public long getExpiresIn() {
+        long remaining = expiresAtNanos - System.nanoTime();
+        return remaining <= 0 ? 0 : (remaining + TimeUnit.MILLISECONDS.toNanos(500)) / 1_000_000_000;
+    }
+
+    @Override
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    @Override
+    public Date getExpiresAt() {
+        return new Date(expiresAt);
+    }
+
+    @Override
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+}
@@ -0,0 +1,158 @@
+package org.entur.auth.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import org.entur.auth.client.oidc.JsonObjectReader;
+
+/**
+ * Read-only view of the claims in the payload of a JWT access token. The signature is not verified,
+ * the claims are only used by the client to know its own token.
+ *
+ * <p>The payload is decoded when first used. The expiry and issue time are read without
+ * materializing the other claims, while all claims are parsed once, on the first call to {@link
+ * #getClaims()} or a related method, and kept for later calls. Nested objects and arrays are not
+ * included. A token which is not a JWT, for example an opaque token, has no claims.
+ */
+public final class JwtClaims {
+    private static final Set<String> TIME_CLAIMS = Set.of("exp", "iat");
+
+    private final String token;
+
+    private volatile Map<String, String> times;
+    private volatile Map<String, String> claims;
+
+    /**
+     * Creates a view of the claims of the given token. The token is not decoded until a claim is
+     * read.
+     *
+     * @param token the access token, or null
+     */
+    public JwtClaims(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Gets the expiry of the token ({@code exp}).
+     *
+     * @return epoch seconds, or 0 if not available
+     */
+    public long getExpiresAt() {
+        return seconds(times().get("exp"));
+    }
+
+    /**
+     * Gets the time the token was issued ({@code iat}).
+     *
+     * @return epoch seconds, or 0 if not available
+     */
+    public long getIssuedAt() {
+        return seconds(times().get("iat"));
+    }
+
+    /**
+     * Gets the scopes granted to the token ({@code scope}).
+     *
+     * @return space separated scopes, or null if not available
+     */
+    public String getScope() {
+        return getClaim("scope");
+    }
+
+    /**
+     * Gets the client the token was issued to ({@code azp}).
+     *
+     * @return the client ID, or null if not available
+     */
+    public String getAuthorizedParty() {
+        return getClaim("azp");
+    }
+
+    /**
+     * Gets a top-level claim with a string, number or boolean value.
+     *
+     * @param name the name of the claim
+     * @return the value, or null if not available
+     */
+    public String getClaim(String name) {
+        return getClaims().get(name);
+    }
+
+    /**
+     * Gets all top-level claims with a string, number or boolean value. Numbers and booleans are
+     * returned as their literal text.
+     *
+     * @return unmodifiable map of claims by name, empty if the token is not a JWT
+     */
+    public Map<String, String> getClaims() {
+        Map<String, String> parsed = claims;
+        if (parsed == null) {
+            parsed = decode(null);
+            claims = parsed;
+        }
+        return parsed;
+    }
+
+    private Map<String, String> times() {
+        Map<String, String> parsed = claims;
+        if (parsed != null) {
+            return parsed;
+        }
+        parsed = times;
+        if (parsed == null) {
+            parsed = decode(TIME_CLAIMS);
+            times = parsed;
+        }
+        return parsed;
+    }
+
+    /**
+     * Decodes the payload of the token. Racing threads may both decode it, with the same result.
+     *
+     * @param names the claims to read, or null for all claims
+     * @return the claims, empty if the token is not a JWT
+     */
+    private Map<String, String> decode(Set<String> names) {
+        if (token == null) {
+            return Map.of();
+        }
+        int start = token.indexOf('.');
+        int end = token.indexOf('.', start + 1);
+        if (start < 0 || end < 0) {
+            return Map.of();
+        }
+
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(token.substring(start + 1, end));
+            Reader reader =
+                    new InputStreamReader(
+                            new ByteArrayInputStream(payload), StandardCharsets.UTF_8);
+            return Map.copyOf(
+                    names == null
+                            ? JsonObjectReader.read(reader)
+                            : JsonObjectReader.read(reader, names));
+        } catch (IllegalArgumentException | IOException ex) {
+            return Map.of();
+        }
+    }
+
+    private static long seconds(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            try {
+                return (long) Double.parseDouble(value);
+            } catch (NumberFormatException notNumber) {
+                return 0;
+            }
+        }
+    }
+}
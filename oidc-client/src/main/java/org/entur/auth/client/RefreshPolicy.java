@@ -0,0 +1,198 @@
+package org.entur.auth.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides when a token is refreshed. For each retrieved token, the policy returns the point in
+ * time when it should be renewed in the background, and the later point in time when callers must
+ * wait for a new token.
+ *
+ * <p>Tokens restored from a snapshot or a token store are treated as if they were received when
+ * they were restored, since the time they were issued is not known.
+ *
+ * @see AccessTokenFactory#setRefreshPolicy(RefreshPolicy)
+ */
+public interface RefreshPolicy {
+
+    /**
+     * Gets the point in time when the token should be renewed in the background.
+     *
+     * @param receivedAt the time (epoch millis) the token was received
+     * @param expiresAt the time (epoch millis) the token expires
+     * @return epoch millis, not after the value returned by {@link #mustRefreshAt(long, long)}
+     */
+    long refreshAt(long receivedAt, long expiresAt);
+
+    /**
+     * Gets the point in time when callers must wait for a new token.
+     *
+     * @param receivedAt the time (epoch millis) the token was received
+     * @param expiresAt the time (epoch millis) the token expires
+     * @return epoch millis
+     */
+    long mustRefreshAt(long receivedAt, long expiresAt);
+
+    /**
+     * Refreshes tokens a fixed number of seconds before they expire. Tokens with a lifetime shorter
+     * than the thresholds are refreshed each time they are used.
+     *
+     * @param shouldRefreshThreshold seconds before expiry when a background refresh starts
+     * @param mustRefreshThreshold seconds before expiry when callers must wait for a new token
+     * @return a policy with fixed thresholds
+     */
+    static RefreshPolicy fixed(long shouldRefreshThreshold, long mustRefreshThreshold) {
+        return new Fixed(shouldRefreshThreshold, mustRefreshThreshold);
+    }
+
+    /**
+     * Refreshes tokens a fixed number of seconds before they expire, like {@link #fixed(long,
+     * long)}. For tokens with a lifetime too short for the thresholds, the background refresh
+     * starts no earlier than half of the lifetime, and callers must wait no earlier than three
+     * quarters of the lifetime, so short-lived tokens are never refreshed on each use.
+     *
+     * @param shouldRefreshThreshold seconds before expiry when a background refresh starts
+     * @param mustRefreshThreshold seconds before expiry when callers must wait for a new token
+     * @return a policy with fixed thresholds, bounded by the lifetime of the token
+     */
+    static RefreshPolicy fixedWithinLifetime(
+            long shouldRefreshThreshold, long mustRefreshThreshold) {
+        return new FixedWithinLifetime(shouldRefreshThreshold, mustRefreshThreshold);
+    }
+
+    /**
+     * Refreshes tokens after a fraction of their lifetime, for example 0.75 to renew tokens in the
+     * background when three quarters of their lifetime have passed. Callers must wait for a new
+     * token halfway between this point and the expiry of the token. The refresh points scale with
+     * the lifetime of the token, so short-lived tokens are never refreshed on each use.
+     *
+     * @param refreshFraction fraction (between 0 and 1) of the lifetime before a background refresh
+     * @return a policy based on the lifetime of the token
+     */
+    static RefreshPolicy lifetimeFraction(double refreshFraction) {
+        return new LifetimeFraction(refreshFraction, (1 + refreshFraction) / 2);
+    }
+
+    /**
+     * Refreshes tokens after fractions of their lifetime, see {@link #lifetimeFraction(double)}.
+     *
+     * @param refreshFraction fraction (between 0 and 1) of the lifetime before a background refresh
+     * @param mustRefreshFraction fraction (between the refresh fraction and 1) of the lifetime
+     *     before callers must wait for a new token
+     * @return a policy based on the lifetime of the token
+     */
+    static RefreshPolicy lifetimeFraction(double refreshFraction, double mustRefreshFraction) {
+        return new LifetimeFraction(refreshFraction, mustRefreshFraction);
+    }
+
+    /**
+     * Moves the background refresh of this policy earlier by a random fraction of the time between
+     * receiving the token and the refresh. The fraction is chosen once per JVM, so instances which
+     * start together spread their token requests over time while each instance keeps a steady
+     * refresh interval. The must-refresh point is not changed.
+     *
+     * @param maxJitter the maximum fraction (between 0 and 1) to move the refresh
+     * @return a policy with jitter
+     */
+    default RefreshPolicy withJitter(double maxJitter) {
+        return new Jitter(this, maxJitter);
+    }
+
+    /**
+     * Refreshes tokens a fixed number of seconds before they expire.
+     *
+     * @param shouldRefreshThreshold seconds before expiry when a background refresh starts
+     * @param mustRefreshThreshold seconds before expiry when callers must wait for a new token
+     */
+    record Fixed(long shouldRefreshThreshold, long mustRefreshThreshold) implements RefreshPolicy {
+        @Override
+        public long refreshAt(long receivedAt, long expiresAt) {
+            return expiresAt - shouldRefreshThreshold * 1000;
+        }
+
+        @Override
+        public long mustRefreshAt(long receivedAt, long expiresAt) {
+            return expiresAt - mustRefreshThreshold * 1000;
+        }
+    }
+
+    /**
+     * Refreshes tokens a fixed number of seconds before they expire, but no earlier than half (the
+     * background refresh) and three quarters (must refresh) of their lifetime.
+     *
+     * @param shouldRefreshThreshold seconds before expiry when a background refresh starts
+     * @param mustRefreshThreshold seconds before expiry when callers must wait for a new token
+     */
+    record FixedWithinLifetime(long shouldRefreshThreshold, long mustRefreshThreshold)
+            implements RefreshPolicy {
+        @Override
+        public long refreshAt(long receivedAt, long expiresAt) {
+            long lifetime = Math.max(0, expiresAt - receivedAt);
+            return Math.max(expiresAt - shouldRefreshThreshold * 1000, receivedAt + lifetime / 2);
+        }
+
+        @Override
+        public long mustRefreshAt(long receivedAt, long expiresAt) {
+            long lifetime = Math.max(0, expiresAt - receivedAt);
+            return Math.max(expiresAt - mustRefreshThreshold * 1000, receivedAt + lifetime * 3 / 4);
+        }
+    }
+
+    /**
+     * Refreshes tokens after fractions of their lifetime.
+     *
+     * @param refreshFraction fraction of the lifetime before a background refresh
+     * @param mustRefreshFraction fraction of the lifetime before callers must wait for a new token
+     */
+    record LifetimeFraction(double refreshFraction, double mustRefreshFraction)
+            implements RefreshPolicy {
+        public LifetimeFraction {
+            if (refreshFraction <= 0 || refreshFraction > 1) {
+                throw new IllegalArgumentException("Refresh fraction must be between 0 and 1");
+            }
+            if (mustRefreshFraction < refreshFraction || mustRefreshFraction > 1) {
+                throw new IllegalArgumentException(
+                        "Must-refresh fraction must be between the refresh fraction and 1");
+            }
+        }
+
+        @Override
+        public long refreshAt(long receivedAt, long expiresAt) {
+            return receivedAt + (long) ((expiresAt - receivedAt) * refreshFraction);
+        }
+
+        @Override
+        public long mustRefreshAt(long receivedAt, long expiresAt) {
+            return receivedAt + (long) ((expiresAt - receivedAt) * mustRefreshFraction);
+        }
+    }
+
+    /**
+     * Moves the background refresh of another policy earlier by a random fraction, chosen once per
+     * JVM.
+     *
+     * @param policy the policy to add jitter to
+     * @param maxJitter the maximum fraction to move the refresh
+     */
+    record Jitter(RefreshPolicy policy, double maxJitter) implements RefreshPolicy {
+        /** Random value between 0 and 1, the same for all policies of this JVM. */
+        private static final double INSTANCE_JITTER = ThreadLocalRandom.current().nextDouble();
+
+        public Jitter {
+            if (maxJitter < 0 || maxJitter > 1) {
+                throw new IllegalArgumentException("Maximum jitter must be between 0 and 1");
+            }
+        }
+
+        @Override
+        public long refreshAt(long receivedAt, long expiresAt) {
+            long refreshAt = policy.refreshAt(receivedAt, expiresAt);
+            long interval = Math.max(0, refreshAt - receivedAt);
+            return refreshAt - (long) (interval * maxJitter * INSTANCE_JITTER);
+        }
+
+        @Override
+        public long mustRefreshAt(long receivedAt, long expiresAt) {
+            return policy.mustRefreshAt(receivedAt, expiresAt);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package org.entur.auth.client;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JVM-wide scheduler renewing tokens in the background, shared by all {@link AccessTokenFactory}
+ * instances.
+ *
+ * <p>Scheduled tasks are kept in a hashed timing wheel driven by a single daemon thread, so
+ * scheduling and cancelling a task is constant time regardless of the number of factories. The
+ * wheel thread only dispatches due tasks; the tasks themselves run on a small pool of daemon worker
+ * threads, so a slow authorization server never delays other timeouts.
+ *
+ * <p>The threads are stopped by {@link #shutdown()}, so the class loader of an undeployed
+ * application can be released. The scheduler is started again when it is next used.
+ */
+final class RefreshScheduler {
+    private static final Logger log = LoggerFactory.getLogger(RefreshScheduler.class);
+
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 512; // Must be a power of two
+    private static final int WORKER_THREADS =
+            Math.max(4, Runtime.getRuntime().availableProcessors());
+
+    /** Runs tasks on the worker threads of the current scheduler. */
+    private static final Executor EXECUTOR = task -> getInstance().workers.execute(task);
+
+    private static volatile RefreshScheduler instance;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final ArrayDeque<Timeout>[] wheel = new ArrayDeque[WHEEL_SIZE];
+
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final ThreadPoolExecutor workers;
+    private final Thread wheelThread;
+    private final long startTime = System.nanoTime();
+    private long tick; // Only accessed by the wheel thread
+
+    private RefreshScheduler() {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+
+        workers =
+                new ThreadPoolExecutor(
+                        WORKER_THREADS,
+                        WORKER_THREADS,
+                        60,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<>(),
+                        daemonThreadFactory("oidc-token-refresh-"));
+        workers.allowCoreThreadTimeOut(true);
+
+        wheelThread = daemonThreadFactory("oidc-token-refresh-timer-").newThread(this::run);
+        wheelThread.start();
+    }
+
+    /**
+     * Gets the JVM-wide scheduler, starting it if it is not running.
+     *
+     * @return the shared scheduler
+     */
+    static RefreshScheduler getInstance() {
+        RefreshScheduler current = instance;
+        if (current != null) {
+            return current;
+        }
+        synchronized (RefreshScheduler.class) {
+            if (instance == null) {
+                instance = new RefreshScheduler();
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Stops the wheel thread and the worker threads. Scheduled tasks which have not been dispatched
+     * are dropped, while tasks already running are completed. Has no effect if the scheduler is not
+     * running.
+     */
+    static void shutdown() {
+        RefreshScheduler current;
+        synchronized (RefreshScheduler.class) {
+            current = instance;
+            instance = null;
+        }
+        if (current != null) {
+            current.wheelThread.interrupt();
+            current.workers.shutdown();
+        }
+    }
+
+    /**
+     * Gets the executor running token retrievals in the background. Tasks run on the worker threads
+     * of the scheduler running when they are submitted.
+     *
+     * @return an executor backed by daemon worker threads
+     */
+    Executor executor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Schedules a task to run on a worker thread after the given delay. The task runs at most one
+     * tick (one second) after the delay has passed.
+     *
+     * @param task the task to run
+     * @param delayMillis delay in milliseconds
+     * @return a handle which can be used to cancel the task
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        Timeout timeout = new Timeout(task, deadline);
+        added.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (!workers.isShutdown()) {
+            try {
+                waitForNextTick();
+                transferAddedTimeouts();
+                expireTimeouts(wheel[(int) (tick & (WHEEL_SIZE - 1))]);
+                tick++;
+            } catch (InterruptedException | RejectedExecutionException ex) {
+                // Stopped by shutdown()
+                return;
+            } catch (RuntimeException ex) {
+                log.warn("Unexpected failure in token refresh scheduler", ex);
+            }
+        }
+    }
+
+    private void waitForNextTick() throws InterruptedException {
+        long deadline = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS * (tick + 1));
+        long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - (System.nanoTime() - startTime));
+        if (sleepMillis > 0) {
+            Thread.sleep(sleepMillis);
+        }
+    }
+
+    private void transferAddedTimeouts() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = Math.max(timeout.deadline / TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS), tick);
+            timeout.remainingRounds = (ticks - tick) / WHEEL_SIZE;
+            wheel[(int) (ticks & (WHEEL_SIZE - 1))].add(timeout);
+        }
+    }
+
+    private void expireTimeouts(ArrayDeque<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                workers.execute(timeout.task);
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /** Handle for a scheduled task. */
+    static final class Timeout {
+        private final Runnable task;
+        private final long deadline; // Nanos relative to scheduler start
+        private long remainingRounds; // Only accessed by the wheel thread
+        private volatile boolean cancelled;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /** Cancels the task. Has no effect if the task has already been dispatched. */
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
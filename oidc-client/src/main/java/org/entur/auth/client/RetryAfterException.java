@@ -0,0 +1,46 @@
+package org.entur.auth.client;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Exception thrown by an {@link AccessTokenClient} when the authorization server rejects a token
+ * request and tells how long to wait before trying again, for example with the {@code Retry-After}
+ * header of a HTTP 429 or 503 response. The {@link BackoffPolicy} of the factory does not retry
+ * earlier than that.
+ */
+public class RetryAfterException extends IOException {
+    private final Duration retryAfter;
+
+    /**
+     * Constructs a new {@code RetryAfterException}.
+     *
+     * @param message the detail message
+     * @param retryAfter the time to wait before trying again
+     */
+    public RetryAfterException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Constructs a new {@code RetryAfterException} with a cause.
+     *
+     * @param message the detail message
+     * @param retryAfter the time to wait before trying again
+     * @param cause the exception reporting the rejected request
+     */
+    public RetryAfterException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Gets the time to wait before trying again, as requested by the authorization server.
+     *
+     * @return the time to wait
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,96 @@
+package org.entur.auth.client;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * JVM-wide registry of {@link AccessTokenFactory} instances, keyed by client credentials and
+ * settings. Factories built with the same credentials share one token, one single-flight refresh
+ * and one background renewal, regardless of which bean, configuration entry or application context
+ * built them.
+ *
+ * <p>Each caller holds a reference to the shared factory, released by {@link
+ * AccessTokenFactory#close()}; background renewal stops when the last reference is released. Values
+ * are held weakly, so factories which are never closed can still be garbage collected.
+ */
+final class SharedAccessTokenFactories {
+    private static final Map<Key, WeakReference<AccessTokenFactory>> FACTORIES =
+            new ConcurrentHashMap<>();
+
+    private SharedAccessTokenFactories() {}
+
+    /**
+     * Gets the shared factory for a key, creating it if no open factory is registered.
+     *
+     * @param key the credentials and settings of the factory
+     * @param factory creates a new factory
+     * @return a factory holding one more reference, to be released with {@link
+     *     AccessTokenFactory#close()}
+     */
+    static AccessTokenFactory acquire(Key key, Supplier<AccessTokenFactory> factory) {
+        FACTORIES.values().removeIf(reference -> reference.get() == null);
+
+        AccessTokenFactory[] acquired = new AccessTokenFactory[1];
+        FACTORIES.compute(
+                key,
+                (k, reference) -> {
+                    AccessTokenFactory existing = reference != null ? reference.get() : null;
+                    if (existing != null && existing.retain()) {
+                        acquired[0] = existing;
+                        return reference;
+                    }
+                    acquired[0] = factory.get();
+                    return new WeakReference<>(acquired[0]);
+                });
+        return acquired[0];
+    }
+
+    /**
+     * Identity of a shared factory. The client secret and the snapshot key are only kept as
+     * digests, so the key can be logged without revealing them. Token stores are compared by
+     * identity, unless the store defines equality.
+     */
+    record Key(
+            String clientType,
+            String domain,
+            String realm,
+            String clientId,
+            String clientSecretDigest,
+            String audience,
+            Long mustRefreshThreshold,
+            Long shouldRefreshThreshold,
+            RefreshPolicy refreshPolicy,
+            Double refreshConfidence,
+            Double refreshJitter,
+            Boolean jwtExpiry,
+            Boolean trafficAwareRefresh,
+            Boolean fetchAhead,
+            Long minThrottleTime,
+            Long maxThrottleTime,
+            BackoffPolicy backoffPolicy,
+            HttpTransportOptions transportOptions,
+            Path tokenSnapshotFile,
+            String tokenSnapshotKeyDigest,
+            TokenStore tokenStore,
+            Long hedgeDelay,
+            Double hedgePercentile,
+            Double maxHedgeRatio) {
+
+        static String digest(String clientSecret) {
+            try {
+                MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+                return HexFormat.of()
+                        .formatHex(sha256.digest(clientSecret.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("SHA-256 is not available", ex);
+            }
+        }
+    }
+}
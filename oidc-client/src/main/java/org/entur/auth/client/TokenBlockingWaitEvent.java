@@ -0,0 +1,22 @@
+package org.entur.auth.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a caller waiting for a token refresh to complete, lasting as long as the caller
+ * waits. Stack traces are disabled, the thread of the event identifies the caller.
+ */
+@Name("org.entur.auth.client.TokenBlockingWait")
+@Label("Token Blocking Wait")
+@Category({"OIDC Auth Client"})
+@Description("Caller stalled until a token has been retrieved")
+@StackTrace(false)
+final class TokenBlockingWaitEvent extends Event {
+    @Label("Client")
+    String client;
+}
@@ -0,0 +1,26 @@
+package org.entur.auth.client;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event for a token request to the authorization server, lasting as long as the request. */
+@Name("org.entur.auth.client.TokenFetch")
+@Label("Token Fetch")
+@Category({"OIDC Auth Client"})
+@Description("Token requested from the authorization server")
+@StackTrace(false)
+final class TokenFetchEvent extends Event {
+    static final String SUCCESS = "success";
+    static final String FAILURE = "failure";
+
+    @Label("Client")
+    String client;
+
+    @Label("Status")
+    @Description("Outcome of the request, success or failure")
+    String status;
+}
@@ -42,4 +42,15 @@ public interface TokenHolder {
     default String getRefreshToken() {
         return null;
     }
+
+    /**
+     * Gets the claims of the access token, decoded when first read. The default implementation
+     * creates a new view on each call, {@link AccessTokenFactory#getClaims()} keeps one view per
+     * token.
+     *
+     * @return the claims, empty if the access token is not a JWT
+     */
+    default JwtClaims getClaims() {
+        return new JwtClaims(getAccessToken());
+    }
 }
@@ -0,0 +1,85 @@
+package org.entur.auth.client;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Canonical identity of a token by audience and scopes, used as key for the per-audience tokens of
+ * an {@link AccessTokenFactory}.
+ *
+ * <p>Keys are equal for the same audience and set of scopes, regardless of the order of the
+ * scopes. Callers on hot paths may keep the key and use {@link
+ * AccessTokenFactory#getAccessToken(TokenKey)} directly, avoiding a new key per call.
+ */
+public final class TokenKey {
+    private final String audience;
+    private final Set<String> scopes;
+    private final String scope;
+
+    private TokenKey(String audience, Set<String> scopes) {
+        this.audience = audience;
+        this.scopes = scopes;
+        this.scope =
+                scopes.isEmpty() ? null : scopes.stream().sorted().collect(Collectors.joining(" "));
+    }
+
+    /**
+     * Gets the canonical key for an audience and a set of scopes.
+     *
+     * @param audience the audience of the token, or null to use the default audience of the client
+     * @param scopes the scopes of the token, or null or empty to use the default scopes
+     * @return the key
+     */
+    public static TokenKey of(String audience, Set<String> scopes) {
+        return new TokenKey(audience, scopes != null ? Set.copyOf(scopes) : Set.of());
+    }
+
+    /**
+     * Gets the audience.
+     *
+     * @return the audience, or null for the default audience of the client
+     */
+    public String getAudience() {
+        return audience;
+    }
+
+    /**
+     * Gets the scopes.
+     *
+     * @return an unmodifiable set of scopes, empty for the default scopes of the client
+     */
+    public Set<String> getScopes() {
+        return scopes;
+    }
+
+    /**
+     * Gets the scopes as the value of an OAuth 2.0 scope parameter.
+     *
+     * @return the sorted, space separated scopes, or null if no scopes are set
+     */
+    public String getScope() {
+        return scope;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TokenKey other)) {
+            return false;
+        }
+        return Objects.equals(audience, other.audience) && scopes.equals(other.scopes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(audience, scopes);
+    }
+
+    @Override
+    public String toString() {
+        return "TokenKey{audience=" + audience + ", scope=" + scope + "}";
+    }
+}
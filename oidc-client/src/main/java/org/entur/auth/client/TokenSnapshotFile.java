@@ -0,0 +1,214 @@
+package org.entur.auth.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local file holding the latest token of an {@link AccessTokenFactory} and its absolute expiry, so
+ * a restarted application can reuse a token which is still valid instead of requesting a new one.
+ *
+ * <p>The file is replaced atomically on each write, so a reader never sees a partially written
+ * snapshot, and is only readable by its owner where the file system supports POSIX permissions. If
+ * a key is given, the snapshot is encrypted with AES-GCM. The snapshot also holds an identity of
+ * the client, so a snapshot is never reused by a client with other credentials.
+ */
+public final class TokenSnapshotFile {
+    private static final Logger log = LoggerFactory.getLogger(TokenSnapshotFile.class);
+
+    private static final int MAGIC = 0x4f494443; // "OIDC"
+    private static final byte PLAIN = 0;
+    private static final byte AES_GCM = 1;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path path;
+    private final String identity;
+    private final SecretKey key;
+
+    /**
+     * Constructs a snapshot file.
+     *
+     * @param path the file holding the snapshot
+     * @param identity identifies the client credentials, a snapshot written with another identity is
+     *     ignored
+     * @param key AES key used to encrypt the snapshot, or null to store it unencrypted
+     */
+    public TokenSnapshotFile(Path path, String identity, SecretKey key) {
+        this.path = path;
+        this.identity = identity;
+        this.key = key;
+    }
+
+    /**
+     * Creates an AES key from its Base64 encoding.
+     *
+     * @param base64 Base64 encoded key of 16, 24 or 32 bytes
+     * @return the key
+     */
+    public static SecretKey aesKey(String base64) {
+        byte[] encoded = Base64.getDecoder().decode(base64);
+        if (encoded.length != 16 && encoded.length != 24 && encoded.length != 32) {
+            throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes");
+        }
+        return new SecretKeySpec(encoded, "AES");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Reads the snapshot.
+     *
+     * @return the snapshot, or null if there is no usable snapshot for this identity
+     */
+    Snapshot read() {
+        try {
+            byte[] content = Files.readAllBytes(path);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a token snapshot");
+                }
+                byte format = in.readByte();
+                byte[] payload = in.readAllBytes();
+                if (format == AES_GCM) {
+                    if (key == null) {
+                        throw new IOException("Token snapshot is encrypted, but no key is configured");
+                    }
+                    payload = decrypt(payload);
+                } else if (format != PLAIN || key != null) {
+                    throw new IOException("Token snapshot is not encrypted with the configured key");
+                }
+
+                try (DataInputStream snapshot =
+                        new DataInputStream(new ByteArrayInputStream(payload))) {
+                    if (!identity.equals(snapshot.readUTF())) {
+                        log.info("Ignoring token snapshot {} written by another client", path);
+                        return null;
+                    }
+                    long expiresAt = snapshot.readLong();
+                    byte[] accessToken = new byte[snapshot.readInt()];
+                    snapshot.readFully(accessToken);
+                    return new Snapshot(new String(accessToken, StandardCharsets.UTF_8), expiresAt);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException | GeneralSecurityException ex) {
+            log.warn("Unable to read token snapshot {}", path, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot.
+     *
+     * @param accessToken the access token
+     * @param expiresAt the expiry of the access token (epoch millis)
+     * @throws IOException if the snapshot can not be written
+     */
+    void write(String accessToken, long expiresAt) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream snapshot = new DataOutputStream(payload)) {
+            snapshot.writeUTF(identity);
+            snapshot.writeLong(expiresAt);
+            byte[] encodedAccessToken = accessToken.getBytes(StandardCharsets.UTF_8);
+            snapshot.writeInt(encodedAccessToken.length);
+            snapshot.write(encodedAccessToken);
+        }
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(content)) {
+            out.writeInt(MAGIC);
+            if (key != null) {
+                out.writeByte(AES_GCM);
+                out.write(encrypt(payload.toByteArray()));
+            } else {
+                out.writeByte(PLAIN);
+                out.write(payload.toByteArray());
+            }
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Unable to encrypt token snapshot", ex);
+        }
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = createTemporaryFile(directory);
+        try {
+            Files.write(temporary, content.toByteArray());
+            try {
+                Files.move(
+                        temporary,
+                        path,
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Path createTemporaryFile(Path directory) throws IOException {
+        String prefix = path.getFileName() + ".";
+        try {
+            return Files.createTempFile(
+                    directory,
+                    prefix,
+                    ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException ex) {
+            return Files.createTempFile(directory, prefix, ".tmp");
+        }
+    }
+
+    private byte[] encrypt(byte[] plain) throws GeneralSecurityException {
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+        byte[] encrypted = cipher.doFinal(plain);
+
+        byte[] result = new byte[IV_LENGTH + encrypted.length];
+        System.arraycopy(iv, 0, result, 0, IV_LENGTH);
+        System.arraycopy(encrypted, 0, result, IV_LENGTH, encrypted.length);
+        return result;
+    }
+
+    private byte[] decrypt(byte[] encrypted) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(
+                Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, encrypted, 0, IV_LENGTH));
+        return cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+    }
+
+    /**
+     * A token read from a snapshot file.
+     *
+     * @param accessToken the access token
+     * @param expiresAt the expiry of the access token (epoch millis)
+     */
+    record Snapshot(String accessToken, long expiresAt) {}
+}
@@ -0,0 +1,189 @@
+package org.entur.auth.client;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable snapshot of the token currently held by an {@link AccessTokenFactory}. All points in
+ * time are absolute epoch milliseconds, so a caller can decide what to do with a single comparison
+ * against the current time.
+ *
+ * <ul>
+ *   <li>before {@code refreshAt} the token is <i>valid</i> and returned as is,
+ *   <li>between {@code refreshAt} and {@code mustRefreshAt} the token is returned while a refresh
+ *       runs in the background,
+ *   <li>after {@code mustRefreshAt} the token <i>must be refreshed</i> and callers wait for the new
+ *       token,
+ *   <li>after {@code expiresAt} the token can not be used at all.
+ * </ul>
+ *
+ * <p>A snapshot created after a <i>failed</i> retrieval keeps the previous token (if any) and sets
+ * {@code retryAt} to the point in time when the next attempt is allowed.
+ *
+ * <p>The value of the Authorization header is built once per token, so sending a request does not
+ * require concatenating or encoding the token again.
+ */
+final class TokenState {
+    static final String BEARER_PREFIX = "Bearer ";
+
+    /** Initial state, forces the first caller to retrieve a token. */
+    static final TokenState EMPTY =
+            new TokenState(
+                    null,
+                    null,
+                    null,
+                    null,
+                    Long.MIN_VALUE,
+                    Long.MIN_VALUE,
+                    Long.MIN_VALUE,
+                    Long.MIN_VALUE);
+
+    /**
+     * Maximum time (millis) between the issue time of a JWT and receiving it, for the local clock to
+     * be trusted to agree with the authorization server.
+     */
+    private static final long MAX_CLOCK_OFFSET = 10_000;
+
+    final TokenHolder tokenHolder;
+    final JwtClaims claims;
+    final String accessToken;
+    final String authorizationHeader;
+    final ByteBuffer authorizationHeaderBytes;
+    final long refreshAt;
+    final long mustRefreshAt;
+    final long expiresAt;
+    final long retryAt;
+
+    private TokenState(
+            TokenHolder tokenHolder,
+            JwtClaims claims,
+            String authorizationHeader,
+            ByteBuffer authorizationHeaderBytes,
+            long refreshAt,
+            long mustRefreshAt,
+            long expiresAt,
+            long retryAt) {
+        this.tokenHolder = tokenHolder;
+        this.claims = claims;
+        this.accessToken = tokenHolder == null ? null : tokenHolder.getAccessToken();
+        this.authorizationHeader = authorizationHeader;
+        this.authorizationHeaderBytes = authorizationHeaderBytes;
+        // A state without a token must never take the fast path
+        this.refreshAt = this.accessToken == null ? Long.MIN_VALUE : refreshAt;
+        this.mustRefreshAt = mustRefreshAt;
+        this.expiresAt = expiresAt;
+        this.retryAt = retryAt;
+    }
+
+    /**
+     * Creates a snapshot for a newly retrieved token.
+     *
+     * @param tokenHolder the retrieved token
+     * @param now the time (epoch millis) the token was received
+     * @param refreshPolicy decides when the token is refreshed
+     * @param jwtExpiry true to take the expiry from the {@code exp} claim of a JWT access token
+     *     instead of {@code expires_in}
+     * @return a valid state
+     */
+    static TokenState valid(
+            TokenHolder tokenHolder, long now, RefreshPolicy refreshPolicy, boolean jwtExpiry) {
+        String accessToken = tokenHolder.getAccessToken();
+        JwtClaims claims = tokenHolder.getClaims();
+        if (claims == null) {
+            claims = new JwtClaims(accessToken);
+        }
+        long expiresAt = now + tokenHolder.getExpiresIn() * 1000;
+        if (jwtExpiry) {
+            expiresAt = jwtExpiresAt(claims, now, expiresAt);
+        }
+        String authorizationHeader = accessToken == null ? null : BEARER_PREFIX + accessToken;
+        if (tokenHolder instanceof IssuedToken issued && issued.authorizationHeader() != null) {
+            authorizationHeader = issued.authorizationHeader();
+        }
+        return new TokenState(
+                tokenHolder,
+                claims,
+                authorizationHeader,
+                encode(authorizationHeader),
+                refreshPolicy.refreshAt(now, expiresAt),
+                refreshPolicy.mustRefreshAt(now, expiresAt),
+                expiresAt,
+                Long.MIN_VALUE);
+    }
+
+    /**
+     * Creates a snapshot after a failed retrieval. The previous token is kept, but no new attempt is
+     * made before {@code retryAt}.
+     *
+     * @param retryAt the time (epoch millis) when the next retrieval may be attempted
+     * @return a failed state
+     */
+    TokenState failed(long retryAt) {
+        return new TokenState(
+                tokenHolder,
+                claims,
+                authorizationHeader,
+                authorizationHeaderBytes,
+                Math.min(retryAt, mustRefreshAt),
+                mustRefreshAt,
+                expiresAt,
+                retryAt);
+    }
+
+    /**
+     * Gets the expiry of a JWT access token. {@code expires_in} is counted from when the response
+     * was received, so the token is considered valid for longer than it is by the network delay.
+     * The {@code exp} claim is exact, as long as the local clock agrees with the authorization
+     * server. If the token was received before it was issued, or long after, the clocks disagree,
+     * and the lifetime of the token is counted from when it was received instead.
+     *
+     * @param claims the claims of the token
+     * @param now the time (epoch millis) the token was received
+     * @param expiresAt the expiry (epoch millis) from {@code expires_in}, used if the token has no
+     *     {@code exp} claim
+     * @return epoch millis
+     */
+    private static long jwtExpiresAt(JwtClaims claims, long now, long expiresAt) {
+        long exp = claims.getExpiresAt() * 1000;
+        if (exp <= 0) {
+            return expiresAt;
+        }
+        long iat = claims.getIssuedAt() * 1000;
+        if (iat <= 0) {
+            return exp > now ? exp : expiresAt;
+        }
+        long offset = now - iat;
+        if (offset < 0 || offset > MAX_CLOCK_OFFSET) {
+            return now + (exp - iat);
+        }
+        return exp;
+    }
+
+    /**
+     * Gets the point in time when the token should be renewed in the background. For a failed state
+     * this is when the next attempt is allowed.
+     *
+     * @return epoch millis, or {@link Long#MIN_VALUE} if no token has been requested yet
+     */
+    long nextRefreshAt() {
+        return accessToken == null ? retryAt : Math.max(refreshAt, retryAt);
+    }
+
+    private static ByteBuffer encode(String authorizationHeader) {
+        if (authorizationHeader == null) {
+            return null;
+        }
+        return ByteBuffer.wrap(authorizationHeader.getBytes(StandardCharsets.US_ASCII))
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks whether the token can still be handed out.
+     *
+     * @param now the current time (epoch millis)
+     * @return true if there is a token which has not expired
+     */
+    boolean isUsable(long now) {
+        return accessToken != null && now < expiresAt;
+    }
+}
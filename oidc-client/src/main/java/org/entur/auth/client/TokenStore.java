@@ -0,0 +1,63 @@
+package org.entur.auth.client;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Store sharing tokens between the nodes of a fleet, so only one node requests a token from the
+ * authorization server for each client while the others read the shared result.
+ *
+ * <p>Before requesting a token, an {@link AccessTokenFactory} with a token store reads the stored
+ * token. If it is not fresh enough, the factory tries to take a lease on the key: the node holding
+ * the lease requests the token and publishes it, while the other nodes keep using their token, or
+ * wait for the published one. Leases expire, so a node which dies while holding a lease does not
+ * block the others for longer than the lease duration.
+ *
+ * <p>Implementations must be thread-safe. Keys identify the client credentials and never contain
+ * the secret itself.
+ */
+public interface TokenStore {
+
+    /**
+     * Reads the stored token.
+     *
+     * @param key identifies the client credentials
+     * @return the stored token, or null if no token is stored
+     * @throws IOException if the store is unavailable
+     */
+    StoredToken get(String key) throws IOException;
+
+    /**
+     * Tries to take the lease for refreshing the token of a key, without waiting.
+     *
+     * @param key identifies the client credentials
+     * @param duration how long the lease is held at most, unless released earlier
+     * @return the lease, or null if another holder has the lease
+     * @throws IOException if the store is unavailable
+     */
+    Lease tryAcquireLease(String key, Duration duration) throws IOException;
+
+    /**
+     * Publishes a token, while holding the lease of the key.
+     *
+     * @param key identifies the client credentials
+     * @param token the token to publish
+     * @param lease the lease held for the key
+     * @throws IOException if the store is unavailable
+     */
+    void put(String key, StoredToken token, Lease lease) throws IOException;
+
+    /** Lease for refreshing the token of a key, released when closed. */
+    interface Lease extends AutoCloseable {
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * A stored token.
+     *
+     * @param accessToken the access token
+     * @param expiresAt the expiry of the access token (epoch millis)
+     */
+    record StoredToken(String accessToken, long expiresAt) {}
+}
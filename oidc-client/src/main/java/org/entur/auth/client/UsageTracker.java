@@ -0,0 +1,129 @@
+package org.entur.auth.client;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how an {@link AccessTokenFactory} is used, so tokens of idle clients are not renewed in
+ * the background. Calls are counted with a striped counter, so the fast path returning a cached
+ * token does not contend on a shared variable.
+ *
+ * <p>When an idle client is used again, the time is recorded. If the last uses after idle periods
+ * are evenly spaced, the next use is predicted, so a token can be retrieved ahead of it.
+ */
+final class UsageTracker {
+    private static final int WAKE_UPS = 4;
+
+    /** Maximum deviation of the intervals between wake-ups from their mean, to be periodic. */
+    private static final double PERIOD_TOLERANCE = 0.1;
+
+    private final LongAdder calls = new LongAdder();
+
+    /** Set when background renewal has been suspended because the client was idle. */
+    private final AtomicBoolean idle = new AtomicBoolean();
+
+    /** Predicted use which a token has been retrieved ahead of, or {@link Long#MIN_VALUE}. */
+    private volatile long expectedUse = Long.MIN_VALUE;
+
+    /** Recent times (epoch millis) the client was used after being idle, guarded by this. */
+    private final long[] wakeUps = new long[WAKE_UPS];
+
+    private int wakeUpCount; // Guarded by this
+
+    /** Counts a call to the factory. */
+    void use() {
+        calls.increment();
+    }
+
+    /**
+     * Called when a token has been retrieved, so only calls using the new token are counted.
+     * Counting is approximate, a concurrent call may be lost.
+     */
+    void tokenReceived() {
+        calls.reset();
+    }
+
+    /**
+     * Checks whether the factory has been used since the token was retrieved, or since the previous
+     * check. Confirms or discards a predicted use which a token was retrieved ahead of.
+     *
+     * @return true if the factory has been used
+     */
+    boolean checkUsed() {
+        boolean used = calls.sumThenReset() > 0;
+        long expected = expectedUse;
+        if (expected != Long.MIN_VALUE) {
+            expectedUse = Long.MIN_VALUE;
+            if (used) {
+                // The use itself was served from the cached token, assume it came as predicted
+                wokeUp(expected);
+            } else {
+                forgetWakeUps();
+            }
+        }
+        return used;
+    }
+
+    /** Marks the client as idle, after background renewal was suspended. */
+    void suspend() {
+        idle.set(true);
+    }
+
+    /**
+     * Called when a call finds the token in need of a refresh. Records the time if the client was
+     * idle.
+     *
+     * @param now the current time (epoch millis)
+     */
+    void resume(long now) {
+        if (idle.get() && idle.compareAndSet(true, false)) {
+            wokeUp(now);
+        }
+    }
+
+    /**
+     * Called when a token has been retrieved ahead of a predicted use.
+     *
+     * @param predictedUse the predicted time (epoch millis) of the use
+     */
+    void fetchedAhead(long predictedUse) {
+        idle.set(false);
+        expectedUse = predictedUse;
+    }
+
+    /**
+     * Predicts the next use of an idle client from the recent uses after idle periods.
+     *
+     * @return the predicted time (epoch millis), or {@link Long#MIN_VALUE} if the uses are not
+     *     periodic
+     */
+    synchronized long predictNextUse() {
+        if (wakeUpCount < WAKE_UPS) {
+            return Long.MIN_VALUE;
+        }
+        long minInterval = Long.MAX_VALUE;
+        long maxInterval = 0;
+        for (int i = 1; i < WAKE_UPS; i++) {
+            long interval = wakeUps[i] - wakeUps[i - 1];
+            minInterval = Math.min(minInterval, interval);
+            maxInterval = Math.max(maxInterval, interval);
+        }
+        long period = (wakeUps[WAKE_UPS - 1] - wakeUps[0]) / (WAKE_UPS - 1);
+        if (period <= 0 || maxInterval - minInterval > period * PERIOD_TOLERANCE * 2) {
+            return Long.MIN_VALUE;
+        }
+        return wakeUps[WAKE_UPS - 1] + period;
+    }
+
+    private synchronized void wokeUp(long now) {
+        if (wakeUpCount == WAKE_UPS) {
+            System.arraycopy(wakeUps, 1, wakeUps, 0, WAKE_UPS - 1);
+            wakeUpCount--;
+        }
+        wakeUps[wakeUpCount++] = now;
+    }
+
+    private synchronized void forgetWakeUps() {
+        wakeUpCount = 0;
+    }
+}
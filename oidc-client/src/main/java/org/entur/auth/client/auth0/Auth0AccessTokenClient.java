@@ -2,11 +2,15 @@ package org.entur.auth.client.auth0;
 
 import com.auth0.client.auth.AuthAPI;
 import com.auth0.exception.Auth0Exception;
+import com.auth0.exception.RateLimitException;
 import com.auth0.net.Request;
 import com.auth0.net.Response;
 import java.io.IOException;
-import java.util.Date;
+import java.time.Duration;
 import org.entur.auth.client.AccessTokenClient;
+import org.entur.auth.client.HttpTransportOptions;
+import org.entur.auth.client.IssuedToken;
+import org.entur.auth.client.RetryAfterException;
 import org.entur.auth.client.TokenHolder;
 
 /** A client for retrieving, renewing, and revoking access tokens using Auth0. */
@@ -38,7 +42,30 @@ public class Auth0AccessTokenClient implements AccessTokenClient {
      */
     public Auth0AccessTokenClient(
             String domain, String clientId, String clientSecret, String audience) {
-        this.authApi = AuthAPI.newBuilder(domain, clientId).withClientSecret(clientSecret).build();
+        this(domain, clientId, clientSecret, audience, HttpTransportOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs a new Auth0AccessTokenClient. Clients of the same domain and transport settings
+     * share their HTTP client, and so its connection pool.
+     *
+     * @param domain The Auth0 domain.
+     * @param clientId The client ID.
+     * @param clientSecret The client secret.
+     * @param audience The audience identifier for the token requests.
+     * @param options The HTTP transport settings.
+     */
+    public Auth0AccessTokenClient(
+            String domain,
+            String clientId,
+            String clientSecret,
+            String audience,
+            HttpTransportOptions options) {
+        this.authApi =
+                AuthAPI.newBuilder(domain, clientId)
+                        .withClientSecret(clientSecret)
+                        .withHttpClient(SharedAuth0HttpClient.forDomain(domain, options))
+                        .build();
         this.audience = audience;
     }
 
@@ -50,8 +77,31 @@ public class Auth0AccessTokenClient implements AccessTokenClient {
      * @throws Auth0Exception If the token request is unsuccessful.
      */
     public TokenHolder requestAccessToken() throws IOException {
-        var requestToken = authApi.requestToken(audience);
-        var response = requestToken.execute();
+        return requestAccessToken(audience, null);
+    }
+
+    /**
+     * Requests a new access token from Auth0 for the given audience and scopes.
+     *
+     * @param audience The audience identifier, or null for the audience of this client.
+     * @param scope Space separated scopes, or null for the default scopes.
+     * @return The TokenHolder containing the access token and related information.
+     * @throws IOException If there's an I/O error during the token request.
+     * @throws Auth0Exception If the token request is unsuccessful.
+     * @throws RetryAfterException If the token request is rate limited.
+     */
+    @Override
+    public TokenHolder requestAccessToken(String audience, String scope) throws IOException {
+        var requestToken = authApi.requestToken(audience != null ? audience : this.audience);
+        if (scope != null) {
+            requestToken.setScope(scope);
+        }
+        Response<com.auth0.json.auth.TokenHolder> response;
+        try {
+            response = requestToken.execute();
+        } catch (RateLimitException ex) {
+            throw rateLimited(ex);
+        }
 
         if (response.getStatusCode() >= 400) {
             throw new Auth0Exception("Can not retrieve access token");
@@ -60,6 +110,11 @@ public class Auth0AccessTokenClient implements AccessTokenClient {
         return getTokenHolder(response);
     }
 
+    @Override
+    public boolean supportsAudiencesAndScopes() {
+        return true;
+    }
+
     /**
      * Renews an existing access token using a refresh token.
      *
@@ -79,29 +134,35 @@ public class Auth0AccessTokenClient implements AccessTokenClient {
         return getTokenHolder(response);
     }
 
+    /**
+     * Reports a rate limited request with the time until the rate limit is reset, so the token
+     * factory does not retry before that.
+     *
+     * @param ex the exception thrown by the Auth0 SDK
+     * @return the exception to throw
+     */
+    private static IOException rateLimited(RateLimitException ex) {
+        long reset = ex.getReset(); // Epoch seconds, or -1 if unknown
+        if (reset <= 0) {
+            return ex;
+        }
+        long retryAfter = Math.max(0, reset * 1000 - System.currentTimeMillis());
+        return new RetryAfterException(
+                "Can not retrieve access token, rate limited", Duration.ofMillis(retryAfter), ex);
+    }
+
+    /**
+     * Copies the token from the response, so the response objects of the Auth0 SDK are not kept.
+     *
+     * @param response the token response
+     * @return the token
+     */
     private static TokenHolder getTokenHolder(Response<com.auth0.json.auth.TokenHolder> response) {
-        final var tokenHolder = response.getBody();
-        return new TokenHolder() {
-            @Override
-            public long getExpiresIn() {
-                return tokenHolder.getExpiresIn();
-            }
-
-            @Override
-            public String getAccessToken() {
-                return tokenHolder.getAccessToken();
-            }
-
-            @Override
-            public Date getExpiresAt() {
-                return tokenHolder.getExpiresAt();
-            }
-
-            @Override
-            public String getRefreshToken() {
-                return tokenHolder.getRefreshToken();
-            }
-        };
+        var tokenHolder = response.getBody();
+        return IssuedToken.of(
+                tokenHolder.getAccessToken(),
+                tokenHolder.getRefreshToken(),
+                tokenHolder.getExpiresIn());
     }
 
     /**
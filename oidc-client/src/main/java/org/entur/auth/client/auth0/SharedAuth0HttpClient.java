@@ -0,0 +1,42 @@
+package org.entur.auth.client.auth0;
+
+import com.auth0.net.client.Auth0HttpClient;
+import com.auth0.net.client.DefaultHttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.entur.auth.client.HttpTransportOptions;
+
+/**
+ * Holder of the Auth0 HTTP clients shared by all Auth0 clients of the same domain and transport
+ * settings, so they share one connection pool and dispatcher instead of each creating their own.
+ */
+final class SharedAuth0HttpClient {
+    private static final Map<Key, Auth0HttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private SharedAuth0HttpClient() {}
+
+    /**
+     * Gets the client shared by the given domain and transport settings. The Auth0 SDK only supports
+     * whole seconds, so the timeouts are rounded up.
+     *
+     * @param domain the Auth0 domain
+     * @param options the transport settings
+     * @return the shared client
+     */
+    static Auth0HttpClient forDomain(String domain, HttpTransportOptions options) {
+        return CLIENTS.computeIfAbsent(
+                new Key(domain, options),
+                key ->
+                        DefaultHttpClient.newBuilder()
+                                .withConnectTimeout(seconds(options.connectTimeout()))
+                                .withReadTimeout(seconds(options.readTimeout()))
+                                .build());
+    }
+
+    private static int seconds(Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, (duration.toMillis() + 999) / 1000);
+    }
+
+    private record Key(String domain, HttpTransportOptions options) {}
+}
@@ -0,0 +1,202 @@
+package org.entur.auth.client.oidc;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Minimal streaming reader for flat JSON objects, as returned by token and discovery endpoints.
+ *
+ * <p>Only the requested top-level members are extracted; all other members, including nested
+ * objects and arrays, are skipped without being materialized. String values are unescaped, other
+ * values (numbers, booleans) are returned as their literal text. Null values are omitted.
+ */
+public final class JsonObjectReader {
+    private final Reader reader;
+    private int peeked = -2; // -2 when nothing is peeked
+
+    private JsonObjectReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the given members from a JSON object.
+     *
+     * @param reader the source of the JSON object
+     * @param names the names of the top-level members to extract
+     * @return the extracted members by name
+     * @throws IOException if reading fails or the input is not a JSON object
+     */
+    public static Map<String, String> read(Reader reader, Set<String> names) throws IOException {
+        return new JsonObjectReader(reader).readObject(names);
+    }
+
+    /**
+     * Reads all top-level members with a string, number or boolean value from a JSON object.
+     *
+     * @param reader the source of the JSON object
+     * @return the members by name
+     * @throws IOException if reading fails or the input is not a JSON object
+     */
+    public static Map<String, String> read(Reader reader) throws IOException {
+        return new JsonObjectReader(reader).readObject(null);
+    }
+
+    private Map<String, String> readObject(Set<String> names) throws IOException {
+        Map<String, String> members = new HashMap<>();
+        expect('{');
+        if (peekNonWhitespace() == '}') {
+            next();
+            return members;
+        }
+
+        while (true) {
+            expect('"');
+            String name = readString();
+            expect(':');
+            if (names == null || names.contains(name)) {
+                String value = readValue();
+                if (value != null) {
+                    members.put(name, value);
+                }
+            } else {
+                skipValue();
+            }
+
+            int c = nextNonWhitespace();
+            if (c == '}') {
+                return members;
+            }
+            if (c != ',') {
+                throw syntaxError(c);
+            }
+        }
+    }
+
+    private String readValue() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '"') {
+            next();
+            return readString();
+        }
+        if (c == '{' || c == '[') {
+            skipValue();
+            return null;
+        }
+        String literal = readLiteral();
+        return "null".equals(literal) ? null : literal;
+    }
+
+    private void skipValue() throws IOException {
+        int c = nextNonWhitespace();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = next();
+                if (c == '"') {
+                    readString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+        } else {
+            peeked = c;
+            readLiteral();
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        StringBuilder literal = new StringBuilder();
+        while (true) {
+            int c = peek();
+            if (c == ',' || c == '}' || c == ']' || c == -1 || Character.isWhitespace(c)) {
+                if (literal.length() == 0) {
+                    throw syntaxError(c);
+                }
+                return literal.toString();
+            }
+            literal.append((char) next());
+        }
+    }
+
+    /** Reads a string, the opening quote has already been consumed. */
+    private String readString() throws IOException {
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append((char) c);
+                continue;
+            }
+
+            c = next();
+            switch (c) {
+                case 'b' -> value.append('\b');
+                case 'f' -> value.append('\f');
+                case 'n' -> value.append('\n');
+                case 'r' -> value.append('\r');
+                case 't' -> value.append('\t');
+                case 'u' -> {
+                    char[] hex = {(char) next(), (char) next(), (char) next(), (char) next()};
+                    try {
+                        value.append((char) Integer.parseInt(new String(hex), 16));
+                    } catch (NumberFormatException ex) {
+                        throw new IOException("Invalid unicode escape in JSON string", ex);
+                    }
+                }
+                default -> value.append((char) c);
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = nextNonWhitespace();
+        if (c != expected) {
+            throw syntaxError(c);
+        }
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        int c = nextNonWhitespace();
+        peeked = c;
+        return c;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = next();
+        } while (Character.isWhitespace(c));
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = reader.read();
+        }
+        return peeked;
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        peeked = -2;
+        if (c == -1) {
+            throw new IOException("Unexpected end of JSON input");
+        }
+        return c;
+    }
+
+    private static IOException syntaxError(int c) {
+        return new IOException(
+                c == -1 ? "Unexpected end of JSON input" : "Unexpected character in JSON: " + (char) c);
+    }
+}
@@ -0,0 +1,443 @@
+package org.entur.auth.client.oidc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.entur.auth.client.AccessTokenClient;
+import org.entur.auth.client.HttpTransportOptions;
+import org.entur.auth.client.IssuedToken;
+import org.entur.auth.client.JwtClaims;
+import org.entur.auth.client.RetryAfterException;
+import org.entur.auth.client.TokenHolder;
+
+/**
+ * A client for retrieving access tokens from an OAuth 2.0 token endpoint using the client
+ * credentials grant. Built on the JDK {@link HttpClient}, using HTTP/2 and persistent connections,
+ * without any dependency on a provider SDK. The endpoints are either given explicitly or resolved
+ * through {@link OidcDiscovery}.
+ *
+ * <p>The form body of the client credentials request is encoded once, and the response is parsed
+ * with a streaming reader which only extracts the members used by the token factory.
+ */
+public class OidcAccessTokenClient implements AccessTokenClient {
+    private static final Set<String> TOKEN_RESPONSE_MEMBERS =
+            Set.of("access_token", "expires_in", "refresh_token", "token_type");
+    private static final Set<String> ERROR_RESPONSE_MEMBERS = Set.of("error", "error_description");
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    /**
+     * Lifetime (seconds) assumed for a token without {@code expires_in}, which is only recommended by
+     * RFC 6749, when the token is not a JWT with an {@code exp} claim either.
+     */
+    static final long DEFAULT_EXPIRES_IN = 300;
+
+    private final HttpClient httpClient;
+    private final URI tokenEndpoint;
+    private final URI revocationEndpoint;
+    private final OidcDiscovery discovery;
+    private final String clientId;
+    private final String clientSecret;
+    private final String audience;
+    private final byte[] clientCredentialsBody;
+    private final Duration requestTimeout;
+
+    /**
+     * Constructs a new OidcAccessTokenClient with the shared default HTTP client.
+     *
+     * @param tokenEndpoint The token endpoint of the authorization server.
+     * @param clientId The client ID.
+     * @param clientSecret The client secret.
+     * @param audience The audience identifier for the token requests, or null if not used.
+     */
+    public OidcAccessTokenClient(
+            URI tokenEndpoint, String clientId, String clientSecret, String audience) {
+        this(
+                SharedHttpClient.getInstance(),
+                DEFAULT_REQUEST_TIMEOUT,
+                tokenEndpoint,
+                null,
+                clientId,
+                clientSecret,
+                audience);
+    }
+
+    /**
+     * Constructs a new OidcAccessTokenClient.
+     *
+     * @param httpClient The HTTP client to use for requests, may be shared between clients.
+     * @param requestTimeout The timeout for each request.
+     * @param tokenEndpoint The token endpoint of the authorization server.
+     * @param revocationEndpoint The revocation endpoint of the authorization server, or null if not
+     *     supported.
+     * @param clientId The client ID.
+     * @param clientSecret The client secret.
+     * @param audience The audience identifier for the token requests, or null if not used.
+     */
+    public OidcAccessTokenClient(
+            HttpClient httpClient,
+            Duration requestTimeout,
+            URI tokenEndpoint,
+            URI revocationEndpoint,
+            String clientId,
+            String clientSecret,
+            String audience) {
+        this(
+                httpClient,
+                requestTimeout,
+                tokenEndpoint,
+                revocationEndpoint,
+                null,
+                clientId,
+                clientSecret,
+                audience);
+    }
+
+    private OidcAccessTokenClient(
+            HttpClient httpClient,
+            Duration requestTimeout,
+            URI tokenEndpoint,
+            URI revocationEndpoint,
+            OidcDiscovery discovery,
+            String clientId,
+            String clientSecret,
+            String audience) {
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.tokenEndpoint = tokenEndpoint;
+        this.revocationEndpoint = revocationEndpoint;
+        this.discovery = discovery;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+
+        this.audience = audience;
+        this.clientCredentialsBody = clientCredentialsBody(audience, null);
+    }
+
+    /**
+     * Constructs a new OidcAccessTokenClient for an Auth0 tenant, using the Auth0 token and
+     * revocation endpoints.
+     *
+     * @param domain The Auth0 domain.
+     * @param clientId The client ID.
+     * @param clientSecret The client secret.
+     * @param audience The audience identifier for the token requests.
+     * @return a client for the Auth0 tenant
+     */
+    public static OidcAccessTokenClient forAuth0(
+            String domain, String clientId, String clientSecret, String audience) {
+        return forAuth0(domain, clientId, clientSecret, audience, HttpTransportOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs a new OidcAccessTokenClient for an Auth0 tenant, see {@link #forAuth0(String,
+     * String, String, String)}. Clients of the same domain and transport settings share their HTTP
+     * client.
+     *
+     * @param domain The Auth0 domain.
+     * @param clientId The client ID.
+     * @param clientSecret The client secret.
+     * @param audience The audience identifier for the token requests.
+     * @param options The HTTP transport settings.
+     * @return a client for the Auth0 tenant
+     */
+    public static OidcAccessTokenClient forAuth0(
+            String domain,
+            String clientId,
+            String clientSecret,
+            String audience,
+            HttpTransportOptions options) {
+        URI issuer = OidcDiscovery.issuer(domain, null);
+        return new OidcAccessTokenClient(
+                SharedHttpClient.forDomain(issuer.getHost(), options),
+                options.readTimeout(),
+                issuer.resolve("oauth/token"),
+                issuer.resolve("oauth/revoke"),
+                clientId,
+                clientSecret,
+                audience);
+    }
+
+    /**
+     * Constructs a new OidcAccessTokenClient for any OpenID Connect provider. The token and
+     * revocation endpoints are resolved from the discovery document of the issuer, which is shared
+     * by all clients of the same issuer. Fetching the document is started immediately.
+     *
+     * @param issuer The issuer URI, ending with a slash, see {@link OidcDiscovery#issuer(String,
+     *     String)}.
+     * @param clientId The client ID.
+     * @param clientSecret The client secret.
+     * @param audience The audience identifier for the token requests, or null if not used.
+     * @return a client for the issuer
+     */
+    public static OidcAccessTokenClient forIssuer(
+            URI issuer, String clientId, String clientSecret, String audience) {
+        return forIssuer(issuer, clientId, clientSecret, audience, HttpTransportOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs a new OidcAccessTokenClient for any OpenID Connect provider, see {@link
+     * #forIssuer(URI, String, String, String)}. Clients of the same issuer host and transport
+     * settings share their HTTP client.
+     *
+     * @param issuer The issuer URI, ending with a slash.
+     * @param clientId The client ID.
+     * @param clientSecret The client secret.
+     * @param audience The audience identifier for the token requests, or null if not used.
+     * @param options The HTTP transport settings.
+     * @return a client for the issuer
+     */
+    public static OidcAccessTokenClient forIssuer(
+            URI issuer,
+            String clientId,
+            String clientSecret,
+            String audience,
+            HttpTransportOptions options) {
+        OidcDiscovery discovery = OidcDiscovery.forIssuer(issuer, options);
+        discovery.prefetch();
+        return new OidcAccessTokenClient(
+                SharedHttpClient.forDomain(issuer.getHost(), options),
+                options.readTimeout(),
+                null,
+                null,
+                discovery,
+                clientId,
+                clientSecret,
+                audience);
+    }
+
+    /**
+     * Requests a new access token using the client credentials grant.
+     *
+     * @return The TokenHolder containing the access token and related information.
+     * @throws IOException If the request fails or the token endpoint responds with an error.
+     */
+    @Override
+    public TokenHolder requestAccessToken() throws IOException {
+        return requestToken(clientCredentialsBody);
+    }
+
+    /**
+     * Requests a new access token for the given audience and scopes using the client credentials
+     * grant.
+     *
+     * @param audience The audience identifier, or null for the audience of this client.
+     * @param scope Space separated scopes, or null for the default scopes.
+     * @return The TokenHolder containing the access token and related information.
+     * @throws IOException If the request fails or the token endpoint responds with an error.
+     */
+    @Override
+    public TokenHolder requestAccessToken(String audience, String scope) throws IOException {
+        return requestToken(clientCredentialsBody(audience != null ? audience : this.audience, scope));
+    }
+
+    @Override
+    public boolean supportsAudiencesAndScopes() {
+        return true;
+    }
+
+    /**
+     * Renews an existing access token using a refresh token.
+     *
+     * @param refreshToken The refresh token used to renew the access token.
+     * @return The TokenHolder containing the renewed access token and related information.
+     * @throws IOException If the request fails or the token endpoint responds with an error.
+     */
+    @Override
+    public TokenHolder renewAccessToken(String refreshToken) throws IOException {
+        String body =
+                "grant_type=refresh_token&refresh_token="
+                        + encode(refreshToken)
+                        + "&client_id="
+                        + encode(clientId)
+                        + "&client_secret="
+                        + encode(clientSecret);
+        return requestToken(body.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Revokes a refresh token, rendering it invalid for future token requests.
+     *
+     * @param refreshToken The refresh token to revoke.
+     * @throws IOException If the request fails or the revocation endpoint responds with an error.
+     * @throws UnsupportedOperationException If no revocation endpoint is configured.
+     */
+    @Override
+    public void revokeRefreshToken(String refreshToken) throws IOException {
+        URI revocationEndpoint =
+                discovery != null
+                        ? discovery.getProviderMetadata().revocationEndpoint()
+                        : this.revocationEndpoint;
+        if (revocationEndpoint == null) {
+            throw new UnsupportedOperationException("Token revocation endpoint is not configured");
+        }
+        String body =
+                "token="
+                        + encode(refreshToken)
+                        + "&client_id="
+                        + encode(clientId)
+                        + "&client_secret="
+                        + encode(clientSecret);
+
+        HttpResponse<Void> response =
+                send(
+                        post(revocationEndpoint, body.getBytes(StandardCharsets.US_ASCII)),
+                        HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() >= 400) {
+            throw new IOException("Can not revoke refresh token, status " + response.statusCode());
+        }
+    }
+
+    private byte[] clientCredentialsBody(String audience, String scope) {
+        StringBuilder body =
+                new StringBuilder("grant_type=client_credentials")
+                        .append("&client_id=")
+                        .append(encode(clientId))
+                        .append("&client_secret=")
+                        .append(encode(clientSecret));
+        if (audience != null) {
+            body.append("&audience=").append(encode(audience));
+        }
+        if (scope != null) {
+            body.append("&scope=").append(encode(scope));
+        }
+        return body.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private TokenHolder requestToken(byte[] body) throws IOException {
+        URI tokenEndpoint =
+                discovery != null ? discovery.getProviderMetadata().tokenEndpoint() : this.tokenEndpoint;
+        HttpResponse<InputStream> response =
+                send(post(tokenEndpoint, body), HttpResponse.BodyHandlers.ofInputStream());
+
+        try (Reader reader = new InputStreamReader(response.body(), StandardCharsets.UTF_8)) {
+            if (response.statusCode() >= 400) {
+                String message =
+                        "Can not retrieve access token, status "
+                                + response.statusCode()
+                                + describeError(reader);
+                Duration retryAfter =
+                        response.headers()
+                                .firstValue("Retry-After")
+                                .map(OidcAccessTokenClient::parseRetryAfter)
+                                .orElse(null);
+                if (retryAfter != null) {
+                    throw new RetryAfterException(message, retryAfter);
+                }
+                throw new IOException(message);
+            }
+
+            Map<String, String> members = JsonObjectReader.read(reader, TOKEN_RESPONSE_MEMBERS);
+            String accessToken = members.get("access_token");
+            if (accessToken == null) {
+                throw new IOException("Can not retrieve access token, no access_token in response");
+            }
+            String tokenType = members.get("token_type");
+            if (!"Bearer".equalsIgnoreCase(tokenType)) {
+                throw new IOException(
+                        "Can not retrieve access token, unsupported token_type: " + tokenType);
+            }
+            return IssuedToken.of(
+                    accessToken,
+                    members.get("refresh_token"),
+                    parseExpiresIn(members.get("expires_in"), accessToken));
+        }
+    }
+
+    /**
+     * Describes an OAuth 2.0 error response (RFC 6749 section 5.2) for the exception message.
+     *
+     * @param reader the body of the error response
+     * @return the error code and description prefixed by a colon, or an empty string if the body is
+     *     not an OAuth 2.0 error response
+     */
+    private static String describeError(Reader reader) {
+        Map<String, String> members;
+        try {
+            members = JsonObjectReader.read(reader, ERROR_RESPONSE_MEMBERS);
+        } catch (IOException ex) {
+            return "";
+        }
+        String error = members.get("error");
+        if (error == null) {
+            return "";
+        }
+        String description = members.get("error_description");
+        return description != null ? ": " + error + " (" + description + ")" : ": " + error;
+    }
+
+    private HttpRequest post(URI uri, byte[] body) {
+        return HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException {
+        try {
+            return httpClient.send(request, bodyHandler);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.uri());
+        }
+    }
+
+    private static long parseExpiresIn(String expiresIn, String accessToken) throws IOException {
+        if (expiresIn == null) {
+            long exp = new JwtClaims(accessToken).getExpiresAt();
+            if (exp <= 0) {
+                return DEFAULT_EXPIRES_IN;
+            }
+            return Math.max(0, exp - TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        }
+        try {
+            return (long) Double.parseDouble(expiresIn);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Can not retrieve access token, invalid expires_in: " + expiresIn, ex);
+        }
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, given either as seconds or as a HTTP date.
+     *
+     * @param value the header value
+     * @return the time to wait, or null if the value is invalid
+     */
+    static Duration parseRetryAfter(String value) {
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException ignored) {
+            // Not a number of seconds, try a HTTP date
+        }
+        try {
+            Instant retryAt =
+                    ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration retryAfter = Duration.between(Instant.now(), retryAt);
+            return retryAfter.isNegative() ? Duration.ZERO : retryAfter;
+        } catch (DateTimeParseException ignored) {
+            return null;
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,261 @@
+package org.entur.auth.client.oidc;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.entur.auth.client.HttpTransportOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cached OpenID Connect discovery document of an issuer, fetched from {@code
+ * /.well-known/openid-configuration}.
+ *
+ * <p>The document is fetched once per issuer and shared by all clients in the JVM. Only the first
+ * request waits for the document; when the time to live has passed, the cached document is still
+ * returned while it is re-validated in the background. If re-validation fails, the cached document
+ * is kept and re-validation is retried after a minute.
+ *
+ * <p>As required by OpenID Connect Discovery, a document is rejected unless its {@code issuer} is
+ * the issuer it was fetched for. A trailing slash is ignored, since the issuer URIs of this client
+ * always end with one.
+ */
+public final class OidcDiscovery {
+    private static final Logger log = LoggerFactory.getLogger(OidcDiscovery.class);
+
+    private static final String CONFIGURATION_PATH = ".well-known/openid-configuration";
+    private static final Set<String> METADATA_MEMBERS =
+            Set.of("issuer", "token_endpoint", "revocation_endpoint");
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+    private static final long RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final Map<Key, OidcDiscovery> INSTANCES = new ConcurrentHashMap<>();
+
+    private final URI issuer;
+    private final URI configurationUri;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final long timeToLiveNanos;
+    private final AtomicReference<CompletableFuture<Document>> pendingFetch =
+            new AtomicReference<>();
+    private volatile Document document;
+
+    OidcDiscovery(
+            URI issuer, HttpClient httpClient, Duration requestTimeout, Duration timeToLive) {
+        this.issuer = issuer;
+        this.configurationUri = issuer.resolve(CONFIGURATION_PATH);
+        this.httpClient = httpClient;
+        this.requestTimeout = requestTimeout;
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * Gets the shared discovery for an issuer, using the default transport settings.
+     *
+     * @param issuer the issuer URI, ending with a slash
+     * @return the discovery shared by all clients of the issuer
+     */
+    public static OidcDiscovery forIssuer(URI issuer) {
+        return forIssuer(issuer, HttpTransportOptions.DEFAULT);
+    }
+
+    /**
+     * Gets the shared discovery for an issuer. The document is fetched with the HTTP client shared
+     * by clients of the issuer host and transport settings, and the read timeout of the settings.
+     *
+     * @param issuer the issuer URI, ending with a slash
+     * @param options the transport settings
+     * @return the discovery shared by all clients of the issuer and transport settings
+     */
+    public static OidcDiscovery forIssuer(URI issuer, HttpTransportOptions options) {
+        return INSTANCES.computeIfAbsent(
+                new Key(issuer, options),
+                key ->
+                        new OidcDiscovery(
+                                key.issuer(),
+                                SharedHttpClient.forDomain(key.issuer().getHost(), key.options()),
+                                key.options().readTimeout(),
+                                DEFAULT_TIME_TO_LIVE));
+    }
+
+    /**
+     * Creates an issuer URI from a domain, which may or may not include the scheme, and an optional
+     * realm. With a realm, the issuer follows the Keycloak convention {@code
+     * https://<domain>/realms/<realm>/}.
+     *
+     * @param domain the domain of the authorization server
+     * @param realm the realm, or null if the domain is the issuer
+     * @return the issuer URI, always ending with a slash
+     */
+    public static URI issuer(String domain, String realm) {
+        String issuer =
+                domain.startsWith("http://") || domain.startsWith("https://")
+                        ? domain
+                        : "https://" + domain;
+        if (!issuer.endsWith("/")) {
+            issuer += "/";
+        }
+        if (realm != null && !realm.isBlank()) {
+            issuer += "realms/" + realm + "/";
+        }
+        return URI.create(issuer);
+    }
+
+    /**
+     * Gets the provider metadata. Blocks only if no document has been fetched yet.
+     *
+     * @return the provider metadata
+     * @throws IOException if the document has never been fetched and can not be fetched now
+     */
+    public OidcProviderMetadata getProviderMetadata() throws IOException {
+        Document current = document;
+        if (current != null) {
+            if (System.nanoTime() - current.revalidateAt >= 0) {
+                fetch(current);
+            }
+            return current.metadata;
+        }
+
+        try {
+            return fetch(null).join().metadata;
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            throw new IOException("Can not fetch " + configurationUri, ex.getCause());
+        }
+    }
+
+    /** Starts fetching the document in the background, unless it has already been fetched. */
+    public void prefetch() {
+        if (document == null) {
+            fetch(null);
+        }
+    }
+
+    private CompletableFuture<Document> fetch(Document previous) {
+        while (true) {
+            CompletableFuture<Document> pending = pendingFetch.get();
+            if (pending != null) {
+                return pending;
+            }
+
+            CompletableFuture<Document> promise = new CompletableFuture<>();
+            if (pendingFetch.compareAndSet(null, promise)) {
+                if (document != previous) {
+                    // Fetched by another thread since the caller read the document
+                    pendingFetch.set(null);
+                    promise.complete(document);
+                    return promise;
+                }
+
+                httpClient
+                        .sendAsync(request(previous), HttpResponse.BodyHandlers.ofString())
+                        .handle((response, ex) -> fetched(previous, response, ex))
+                        .whenComplete(
+                                (fetched, ex) -> {
+                                    if (fetched != null) {
+                                        document = fetched;
+                                    }
+                                    pendingFetch.set(null);
+                                    if (ex != null) {
+                                        promise.completeExceptionally(ex);
+                                    } else {
+                                        promise.complete(fetched);
+                                    }
+                                });
+                return promise;
+            }
+        }
+    }
+
+    private HttpRequest request(Document previous) {
+        HttpRequest.Builder request =
+                HttpRequest.newBuilder(configurationUri)
+                        .timeout(requestTimeout)
+                        .header("Accept", "application/json")
+                        .GET();
+        if (previous != null && previous.etag != null) {
+            request.header("If-None-Match", previous.etag);
+        }
+        return request.build();
+    }
+
+    private Document fetched(Document previous, HttpResponse<String> response, Throwable ex) {
+        long now = System.nanoTime();
+        try {
+            if (ex != null) {
+                throw new IOException("Can not fetch " + configurationUri, ex);
+            }
+            if (previous != null && response.statusCode() == 304) {
+                return new Document(previous.metadata, previous.etag, now + timeToLiveNanos);
+            }
+            if (response.statusCode() != 200) {
+                throw new IOException(
+                        "Can not fetch " + configurationUri + ", status " + response.statusCode());
+            }
+
+            return new Document(
+                    parse(response.body()),
+                    response.headers().firstValue("ETag").orElse(null),
+                    now + timeToLiveNanos);
+        } catch (IOException | RuntimeException e) {
+            if (previous == null) {
+                throw e instanceof IOException ioException
+                        ? new UncheckedIOException(ioException)
+                        : (RuntimeException) e;
+            }
+            log.warn("Unable to re-validate {}, keeping cached document", configurationUri, e);
+            return new Document(previous.metadata, previous.etag, now + RETRY_NANOS);
+        }
+    }
+
+    private OidcProviderMetadata parse(String body) throws IOException {
+        Map<String, String> members = JsonObjectReader.read(new StringReader(body), METADATA_MEMBERS);
+        String tokenEndpoint = members.get("token_endpoint");
+        if (tokenEndpoint == null) {
+            throw new IOException("No token_endpoint in " + configurationUri);
+        }
+        String issuer = members.get("issuer");
+        if (issuer == null
+                || !withoutTrailingSlash(issuer).equals(withoutTrailingSlash(this.issuer.toString()))) {
+            throw new IOException(
+                    "Issuer " + issuer + " in " + configurationUri + " does not match " + this.issuer);
+        }
+        String revocationEndpoint = members.get("revocation_endpoint");
+        return new OidcProviderMetadata(
+                URI.create(issuer),
+                URI.create(tokenEndpoint),
+                revocationEndpoint != null ? URI.create(revocationEndpoint) : null);
+    }
+
+    private static String withoutTrailingSlash(String uri) {
+        return uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+    }
+
+    private record Key(URI issuer, HttpTransportOptions options) {}
+
+    private static final class Document {
+        private final OidcProviderMetadata metadata;
+        private final String etag;
+        private final long revalidateAt; // System.nanoTime()
+
+        private Document(OidcProviderMetadata metadata, String etag, long revalidateAt) {
+            this.metadata = metadata;
+            this.etag = etag;
+            this.revalidateAt = revalidateAt;
+        }
+    }
+}
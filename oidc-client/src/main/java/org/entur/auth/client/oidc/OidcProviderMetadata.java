@@ -0,0 +1,12 @@
+package org.entur.auth.client.oidc;
+
+import java.net.URI;
+
+/**
+ * The members of an OpenID Connect discovery document used by the token clients.
+ *
+ * @param issuer the issuer identifier
+ * @param tokenEndpoint the token endpoint
+ * @param revocationEndpoint the revocation endpoint, or null if not supported
+ */
+public record OidcProviderMetadata(URI issuer, URI tokenEndpoint, URI revocationEndpoint) {}
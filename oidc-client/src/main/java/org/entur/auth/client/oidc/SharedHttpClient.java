@@ -0,0 +1,47 @@
+package org.entur.auth.client.oidc;
+
+import java.net.http.HttpClient;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.entur.auth.client.HttpTransportOptions;
+
+/**
+ * Holder of the {@link HttpClient} instances shared by all OIDC clients created without an explicit
+ * HTTP client, so connections to the same authorization server are reused across clients. Clients
+ * with the default transport settings share one instance, other clients share one instance per
+ * domain and settings.
+ */
+final class SharedHttpClient {
+    private static final HttpClient INSTANCE = create(HttpTransportOptions.DEFAULT);
+
+    private static final Map<Key, HttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private SharedHttpClient() {}
+
+    static HttpClient getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the client shared by the given domain and transport settings.
+     *
+     * @param domain the domain of the authorization server
+     * @param options the transport settings, the read timeout is applied to each request
+     * @return the shared client
+     */
+    static HttpClient forDomain(String domain, HttpTransportOptions options) {
+        if (options.equals(HttpTransportOptions.DEFAULT)) {
+            return INSTANCE;
+        }
+        return CLIENTS.computeIfAbsent(new Key(domain, options), key -> create(key.options()));
+    }
+
+    private static HttpClient create(HttpTransportOptions options) {
+        return HttpClient.newBuilder()
+                .version(options.http2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(options.connectTimeout())
+                .build();
+    }
+
+    private record Key(String domain, HttpTransportOptions options) {}
+}
@@ -1,19 +1,50 @@
 package org.entur.auth.client;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.io.TempDir;
 
 @TestMethodOrder(MethodOrderer.MethodName.class)
 public class AccessTokenFactoryTest {
@@ -31,6 +62,7 @@ public class AccessTokenFactoryTest {
                 .thenThrow(new RuntimeException("Can not get access token"));
 
         ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client);
+        factory.runRefreshesOnCallingThread(); // the failed should-refresh completes before the leap
         String accessToken = factory.getAccessToken();
         assertEquals(first.getAccessToken(), accessToken);
 
@@ -85,6 +117,7 @@ public class AccessTokenFactoryTest {
         when(client.requestAccessToken()).thenReturn(first).thenReturn(second);
 
         ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client);
+        factory.runRefreshesOnCallingThread();
 
         String accessToken = factory.getAccessToken();
         assertEquals(first.getAccessToken(), accessToken);
@@ -94,7 +127,7 @@ public class AccessTokenFactoryTest {
 
         // check that existing session is refreshed
         accessToken = factory.getAccessToken();
-        Thread.currentThread().sleep(200);
+        assertEquals(first.getAccessToken(), accessToken);
         accessToken = factory.getAccessToken();
         assertNotEquals(first.getAccessToken(), accessToken);
         assertEquals(second.getAccessToken(), accessToken);
@@ -151,6 +184,836 @@ public class AccessTokenFactoryTest {
         verify(client, never()).renewAccessToken(any(String.class));
     }
 
+    @Test
+    void testAuthorizationHeaderFollowsToken() throws IOException, AccessTokenUnavailableException {
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        TokenHolder first = getResponseWithoutRefreshToken("first");
+        TokenHolder second = getResponseWithoutRefreshToken("second");
+
+        when(client.requestAccessToken()).thenReturn(first).thenReturn(second);
+
+        ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client);
+
+        assertEquals("Bearer first", factory.getAuthorizationHeader());
+        assertSame(factory.getAuthorizationHeader(), factory.getAuthorizationHeader());
+
+        ByteBuffer headerBytes = factory.getAuthorizationHeaderBytes();
+        assertTrue(headerBytes.isReadOnly());
+        assertEquals(
+                "Bearer first", StandardCharsets.US_ASCII.decode(headerBytes.duplicate()).toString());
+
+        // simulate leap in time
+        factory.incrementTime((300 - 9) * 1000);
+
+        assertEquals("Bearer second", factory.getAuthorizationHeader());
+        assertEquals(
+                "Bearer second",
+                StandardCharsets.US_ASCII
+                        .decode(factory.getAuthorizationHeaderBytes().duplicate())
+                        .toString());
+
+        verify(client, times(2)).requestAccessToken();
+    }
+
+    @Test
+    void testConcurrentCallersShareSingleRefresh() throws Exception {
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        TokenHolder first = getResponseWithoutRefreshToken("first");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(client.requestAccessToken())
+                .thenAnswer(
+                        invocation -> {
+                            started.countDown();
+                            release.await();
+                            return first;
+                        });
+
+        AccessTokenFactory factory = getFactory(client);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> factory.getAccessToken()));
+            }
+            started.await();
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals(first.getAccessToken(), result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(client, times(1)).requestAccessToken();
+    }
+
+    @Test
+    void testAsyncCallerDoesNotBlockAndSharesRefresh() throws Exception {
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        TokenHolder first = getResponseWithoutRefreshToken("first");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        when(client.requestAccessToken())
+                .thenAnswer(
+                        invocation -> {
+                            started.countDown();
+                            release.await();
+                            return first;
+                        });
+
+        AccessTokenFactory factory = getFactory(client);
+
+        CompletableFuture<String> asyncToken = factory.getAccessTokenAsync();
+        started.await();
+        assertFalse(asyncToken.isDone());
+
+        CompletableFuture<String> blockingToken =
+                CompletableFuture.supplyAsync(factory::getAccessToken);
+        release.countDown();
+
+        assertEquals(first.getAccessToken(), asyncToken.get(5, TimeUnit.SECONDS));
+        assertEquals(first.getAccessToken(), blockingToken.get(5, TimeUnit.SECONDS));
+        assertTrue(factory.getAccessTokenAsync().isDone());
+
+        verify(client, times(1)).requestAccessToken();
+    }
+
+    @Test
+    void testBackgroundRefreshWithoutCallers() throws Exception {
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        TokenHolder first = getResponseWithoutRefreshToken("first", 4L);
+        TokenHolder second = getResponseWithoutRefreshToken("second", 300L);
+
+        when(client.requestAccessToken()).thenReturn(first).thenReturn(second);
+
+        try (AccessTokenFactory factory = new AccessTokenFactory(client)) {
+            factory.setShouldRefreshThreshold(3);
+            factory.setMustRefreshThreshold(1);
+
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+
+            // should refresh point is reached after one second, renewed by the shared scheduler
+            verify(client, timeout(5000).times(2)).requestAccessToken();
+            assertEquals(second.getAccessToken(), factory.getAccessToken());
+        }
+    }
+
+    @Test
+    void testTrafficAwareRefreshLetsIdleTokenLapse() throws Exception {
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        TokenHolder first = getResponseWithoutRefreshToken("first", 4L);
+        TokenHolder second = getResponseWithoutRefreshToken("second", 300L);
+
+        when(client.requestAccessToken()).thenReturn(first).thenReturn(second);
+
+        try (ConfigurableClockAccessTokenFactory factory =
+                new ConfigurableClockAccessTokenFactory(client)) {
+            factory.runRefreshesOnCallingThread();
+            factory.runScheduledRenewalsOnClock();
+            factory.incrementTime(0);
+            factory.setShouldRefreshThreshold(3);
+            factory.setMustRefreshThreshold(1);
+            factory.setTrafficAwareRefresh(true);
+
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+
+            // not used after it was retrieved, so not renewed at the should refresh point
+            factory.incrementTime(2500);
+            verify(client, times(1)).requestAccessToken();
+
+            // used again, renewed on demand
+            factory.getAccessToken();
+            verify(client, times(2)).requestAccessToken();
+            assertEquals(second.getAccessToken(), factory.getAccessToken());
+        }
+    }
+
+    @Test
+    void testUsageTrackerPredictsNextUse() {
+        // evenly spaced uses after idle periods predict the next use
+        UsageTracker usage = new UsageTracker();
+        for (long time : new long[] {0, 3_600_000, 7_200_000, 10_800_000}) {
+            usage.suspend();
+            usage.resume(time);
+        }
+        assertEquals(14_400_000, usage.predictNextUse());
+
+        // a token retrieved ahead of a use which does not come discards the prediction
+        usage.fetchedAhead(14_400_000);
+        assertFalse(usage.checkUsed());
+        assertEquals(Long.MIN_VALUE, usage.predictNextUse());
+    }
+
+    @Test
+    void testTrafficAwareRefreshRenewsUsedToken() throws Exception {
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        TokenHolder first = getResponseWithoutRefreshToken("first", 4L);
+        TokenHolder second = getResponseWithoutRefreshToken("second", 300L);
+
+        when(client.requestAccessToken()).thenReturn(first).thenReturn(second);
+
+        try (AccessTokenFactory factory = new AccessTokenFactory(client)) {
+            factory.setShouldRefreshThreshold(3);
+            factory.setMustRefreshThreshold(1);
+            factory.setTrafficAwareRefresh(true);
+
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+
+            // used after it was retrieved, renewed by the shared scheduler without callers
+            verify(client, timeout(5000).times(2)).requestAccessToken();
+            assertEquals(second.getAccessToken(), factory.getAccessToken());
+        }
+    }
+
+    @Test
+    void testFlightRecorderEvents(@TempDir Path directory) throws Exception {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        when(client.requestAccessToken()).thenThrow(new IOException("Can not get access token"));
+
+        Path file = directory.resolve("events.jfr");
+        try (Recording recording = new Recording();
+                AccessTokenFactory factory = getFactory(client)) {
+            recording.enable(TokenFetchEvent.class);
+            recording.enable(TokenBlockingWaitEvent.class);
+            recording.enable(BackoffAppliedEvent.class);
+            recording.start();
+
+            factory.setName("client");
+            assertThrows(AccessTokenUnavailableException.class, factory::getAccessToken);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        var events =
+                RecordingFile.readAllEvents(file).stream()
+                        .collect(Collectors.toMap(event -> event.getEventType().getName(), event -> event));
+        RecordedEvent fetch = events.get("org.entur.auth.client.TokenFetch");
+        assertEquals("client", fetch.getString("client"));
+        assertEquals("failure", fetch.getString("status"));
+        RecordedEvent backoff = events.get("org.entur.auth.client.BackoffApplied");
+        assertEquals(Duration.ofSeconds(1), backoff.getDuration("throttleTime"));
+        assertFalse(backoff.getBoolean("tokenAvailable"));
+        assertTrue(events.containsKey("org.entur.auth.client.TokenBlockingWait"));
+    }
+
+    @Test
+    void testHedgedRequestWinsOverSlowRequest() throws Exception {
+        TokenHolder fast = getResponseWithoutRefreshToken("fast");
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AtomicInteger requests = new AtomicInteger();
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        when(client.requestAccessToken())
+                .thenAnswer(
+                        invocation -> {
+                            if (requests.incrementAndGet() == 1) {
+                                try {
+                                    Thread.sleep(10_000);
+                                } catch (InterruptedException ex) {
+                                    cancelled.countDown();
+                                    throw new InterruptedIOException();
+                                }
+                            }
+                            return fast;
+                        });
+
+        HedgingAccessTokenClient hedgingClient =
+                new HedgingAccessTokenClient(client, Duration.ofMillis(50), 0, 1);
+        assertSame(fast, hedgingClient.requestAccessToken());
+        assertEquals(1, hedgingClient.getHedges());
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+
+        // The first slow request is hedged, further hedges wait for the budget of 10% of requests
+        AccessTokenClient slowClient = mock(AccessTokenClient.class);
+        when(slowClient.requestAccessToken())
+                .thenAnswer(
+                        invocation -> {
+                            Thread.sleep(100);
+                            return fast;
+                        });
+        HedgingAccessTokenClient limitedClient =
+                new HedgingAccessTokenClient(slowClient, Duration.ofMillis(10), 0, 0.1);
+        assertSame(fast, limitedClient.requestAccessToken());
+        assertEquals(1, limitedClient.getHedges());
+        assertSame(fast, limitedClient.requestAccessToken());
+        assertEquals(1, limitedClient.getHedges());
+    }
+
+    @Test
+    void testHedgingThreadsAreLimited() throws Exception {
+        TokenHolder hedged = getResponseWithoutRefreshToken("hedged");
+        TokenHolder direct = getResponseWithoutRefreshToken("direct");
+        Thread caller = Thread.currentThread();
+        int limit = HedgingAccessTokenClient.MAX_RUNNING_REQUESTS;
+        CountDownLatch running = new CountDownLatch(limit);
+        CountDownLatch release = new CountDownLatch(1);
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        when(client.requestAccessToken())
+                .thenAnswer(
+                        invocation -> {
+                            if (Thread.currentThread() == caller) {
+                                return direct;
+                            }
+                            running.countDown();
+                            release.await(5, TimeUnit.SECONDS);
+                            return hedged;
+                        });
+
+        HedgingAccessTokenClient hedgingClient =
+                new HedgingAccessTokenClient(client, Duration.ofMinutes(1), 0, 1);
+        ExecutorService callers = Executors.newFixedThreadPool(limit);
+        try {
+            List<Future<TokenHolder>> results = new ArrayList<>();
+            for (int i = 0; i < limit; i++) {
+                results.add(callers.submit(() -> hedgingClient.requestAccessToken()));
+            }
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+
+            // All hedging threads are busy, so the request is sent on the calling thread
+            assertSame(direct, hedgingClient.requestAccessToken());
+
+            release.countDown();
+            for (Future<TokenHolder> result : results) {
+                assertSame(hedged, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+        }
+        assertEquals(0, hedgingClient.getHedges());
+    }
+
+    @Test
+    void testMaxWaitDoesNotCancelRefresh() throws Exception {
+        TokenHolder slow = getResponseWithoutRefreshToken("slow");
+        CountDownLatch release = new CountDownLatch(1);
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        when(client.requestAccessToken())
+                .thenAnswer(
+                        invocation -> {
+                            release.await(5, TimeUnit.SECONDS);
+                            return slow;
+                        });
+
+        try (AccessTokenFactory factory = new AccessTokenFactory(client)) {
+            AccessTokenUnavailableException exception =
+                    assertThrows(
+                            AccessTokenUnavailableException.class,
+                            () -> factory.getAccessToken(Duration.ofMillis(50)));
+            assertTrue(exception.getMessage().contains("50 ms"));
+
+            // The refresh started by the caller giving up is shared by the next caller
+            release.countDown();
+            assertEquals(slow.getAccessToken(), factory.getAccessToken(Duration.ofSeconds(5)));
+            assertEquals(
+                    "Bearer " + slow.getAccessToken(),
+                    factory.getAuthorizationHeader(Duration.ZERO));
+        }
+        verify(client, times(1)).requestAccessToken();
+    }
+
+    @Test
+    void testLifetimeFractionRefreshPolicyWithShortLivedTokens()
+            throws IOException, AccessTokenUnavailableException {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        TokenHolder first = getResponseWithoutRefreshToken("first", 20L);
+        TokenHolder second = getResponseWithoutRefreshToken("second", 20L);
+        when(client.requestAccessToken()).thenReturn(first).thenReturn(second);
+
+        try (ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client)) {
+            // The fixed thresholds exceed the lifetime, and would refresh on every call
+            factory.setRefreshPolicy(RefreshPolicy.lifetimeFraction(0.75));
+
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            factory.incrementTime(10 * 1000);
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            verify(client, times(1)).requestAccessToken();
+
+            // Refreshed in the background after 15 seconds, and must be refreshed after 17.5
+            factory.incrementTime(6 * 1000);
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            verify(client, timeout(1000).times(2)).requestAccessToken();
+        }
+    }
+
+    @Test
+    void testFixedThresholdsWithShortLivedTokens() throws Exception {
+        // The fixed thresholds are used as is, even if they exceed the lifetime
+        RefreshPolicy fixed = RefreshPolicy.fixed(120, 60);
+        assertEquals(100_000 - 120_000, fixed.refreshAt(0, 100_000));
+        assertEquals(100_000 - 60_000, fixed.mustRefreshAt(0, 100_000));
+
+        // The thresholds exceed the lifetime, so half and three quarters of it are used
+        RefreshPolicy policy = RefreshPolicy.fixedWithinLifetime(120, 60);
+        assertEquals(50_000, policy.refreshAt(0, 100_000));
+        assertEquals(75_000, policy.mustRefreshAt(0, 100_000));
+        assertEquals(3_600_000 - 120_000, policy.refreshAt(0, 3_600_000));
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        TokenHolder first = getResponseWithoutRefreshToken("first", 100L);
+        TokenHolder second = getResponseWithoutRefreshToken("second", 100L);
+        when(client.requestAccessToken()).thenReturn(first).thenReturn(second);
+
+        try (ConfigurableClockAccessTokenFactory factory =
+                new ConfigurableClockAccessTokenFactory(client)) {
+            factory.runRefreshesOnCallingThread();
+            factory.runScheduledRenewalsOnClock();
+            factory.setRefreshPolicy(policy);
+            factory.incrementTime(0);
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+
+            // Not renewed in the background before half of the lifetime
+            factory.incrementTime(40 * 1000);
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            verify(client, times(1)).requestAccessToken();
+
+            // Renewed in the background once half of the lifetime has passed
+            factory.incrementTime(20 * 1000);
+            verify(client, times(2)).requestAccessToken();
+            assertEquals(second.getAccessToken(), factory.getAccessToken());
+        }
+    }
+
+    @Test
+    void testRefreshPolicyJitterMovesRefreshEarlier() {
+        RefreshPolicy policy = RefreshPolicy.fixed(30, 10);
+        RefreshPolicy jittered = policy.withJitter(0.2);
+
+        long refreshAt = jittered.refreshAt(0, 300_000);
+        assertTrue(refreshAt <= 270_000 && refreshAt >= 270_000 - 54_000);
+        assertEquals(refreshAt, jittered.refreshAt(0, 300_000));
+        assertEquals(policy.mustRefreshAt(0, 300_000), jittered.mustRefreshAt(0, 300_000));
+
+        assertThrows(IllegalArgumentException.class, () -> RefreshPolicy.lifetimeFraction(1.5));
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        new AccessTokenFactoryBuilder()
+                                .withDomain("domain")
+                                .withClientId("clientId")
+                                .withClientSecret("secret")
+                                .withAudience("audience")
+                                .withShouldRefreshThreshold(30L)
+                                .withMustRefreshThreshold(10L)
+                                .withRefreshPolicy(RefreshPolicy.lifetimeFraction(0.75))
+                                .buildOidc());
+    }
+
+    @Test
+    void testAdaptiveRefreshPolicyFollowsLatencyAndFailures() throws Exception {
+        AdaptiveRefreshPolicy policy =
+                new AdaptiveRefreshPolicy(RefreshPolicy.fixed(120, 60), 0.99, Duration.ofSeconds(1));
+
+        // The fixed refresh point is used until enough requests have been observed
+        assertEquals(-1, policy.getLeadTime());
+        assertEquals(300_000 - 120_000, policy.refreshAt(0, 300_000));
+
+        for (int i = 0; i < 8; i++) {
+            policy.tokenFetched(TimeUnit.MILLISECONDS.toNanos(500));
+        }
+        // Minimum lead time of 2 seconds and one request of 500 ms before the must-refresh point
+        assertEquals(2_500, policy.getLeadTime());
+        assertEquals(300_000 - 60_000 - 2_500, policy.refreshAt(0, 300_000));
+        assertEquals(300_000 - 60_000, policy.mustRefreshAt(0, 300_000));
+
+        // With half of the requests failing, 7 attempts are needed for 99% confidence
+        for (int i = 0; i < 8; i++) {
+            policy.tokenFetchFailed(TimeUnit.MILLISECONDS.toNanos(500), new IOException());
+        }
+        assertEquals(2_000 + 7 * 500 + 6 * 1000, policy.getLeadTime());
+
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> new AdaptiveRefreshPolicy(RefreshPolicy.fixed(120, 60), 1, Duration.ZERO));
+
+        // The factory reports its token requests to the policy
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        when(client.requestAccessToken()).thenReturn(getResponseWithoutRefreshToken("token"));
+        AdaptiveRefreshPolicy observing =
+                new AdaptiveRefreshPolicy(RefreshPolicy.fixed(120, 60), 0.99, Duration.ofSeconds(1));
+        try (ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client)) {
+            factory.setRefreshPolicy(observing.withJitter(0.1));
+            for (int i = 0; i < 8; i++) {
+                factory.getAccessToken();
+                factory.incrementTime(300 * 1000);
+            }
+        }
+        assertTrue(observing.getLeadTime() >= 2_000);
+    }
+
+    @Test
+    void testIssuedTokenTracksExpiryWithMonotonicClock()
+            throws IOException, AccessTokenUnavailableException {
+        IssuedToken token = IssuedToken.of("token", "refresh", 300);
+        assertEquals(300, token.getExpiresIn());
+        assertFalse(token.isExpired());
+        assertEquals(token.expiresAt(), token.getExpiresAt().getTime());
+        assertNull(token.authorizationHeader());
+        assertTrue(new IssuedToken("token", null, 0, System.nanoTime() - 1, null).isExpired());
+
+        // The pre-encoded Authorization header is used as is
+        IssuedToken encoded = token.withAuthorizationHeader();
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        when(client.requestAccessToken()).thenReturn(encoded);
+        try (AccessTokenFactory factory = getFactory(client)) {
+            assertSame(encoded.authorizationHeader(), factory.getAuthorizationHeader());
+            assertEquals("Bearer token", factory.getAuthorizationHeader());
+        }
+    }
+
+    @Test
+    void testJwtExpiryAndClaims() throws IOException, AccessTokenUnavailableException {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        try (ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client)) {
+            factory.incrementTime(0);
+            long now = factory.clock.millis() / 1000;
+            String token =
+                    jwt(
+                            "{\"iat\":"
+                                    + now
+                                    + ",\"exp\":"
+                                    + (now + 600)
+                                    + ",\"scope\":\"read write\",\"azp\":\"client\","
+                                    + "\"roles\":[\"admin\"]}");
+            when(client.requestAccessToken())
+                    .thenReturn(getResponseWithoutRefreshToken(token, 300L));
+            factory.setJwtExpiry(true);
+
+            assertEquals(token, factory.getAccessToken());
+
+            // The exp claim is used instead of expires_in
+            assertTrue(factory.getRemainingLifetime() > 599 * 1000);
+
+            JwtClaims claims = factory.getClaims();
+            assertSame(claims, factory.getClaims());
+            assertEquals(now + 600, claims.getExpiresAt());
+            assertEquals(now, claims.getIssuedAt());
+            assertEquals("read write", claims.getScope());
+            assertEquals("client", claims.getAuthorizedParty());
+            assertNull(claims.getClaim("roles"));
+        }
+
+        assertTrue(new JwtClaims("opaque-token").getClaims().isEmpty());
+        assertEquals(0, new JwtClaims(null).getExpiresAt());
+    }
+
+    @Test
+    void testBackoffPolicyRespectsRetryAfter() throws IOException, AccessTokenUnavailableException {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        when(client.requestAccessToken())
+                .thenThrow(new RetryAfterException("Rate limited", Duration.ofSeconds(30)));
+
+        try (ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client)) {
+            factory.setBackoffPolicy(null);
+            assertThrows(AccessTokenUnavailableException.class, factory::getAccessToken);
+            assertTrue(factory.getBackoffTime() > 29 * 1000);
+
+            // Not retried before the time requested by the server
+            factory.incrementTime(29 * 1000);
+            assertThrows(AccessTokenUnavailableException.class, factory::getAccessToken);
+            verify(client, times(1)).requestAccessToken();
+        }
+
+        BackoffPolicy jitter =
+                BackoffPolicy.decorrelatedJitter(Duration.ofSeconds(1), Duration.ofSeconds(60));
+        long delay = 0;
+        for (int i = 0; i < 20; i++) {
+            long next = jitter.nextDelay(delay, null);
+            assertTrue(next >= 1000 && next <= Math.min(60_000, Math.max(1000, delay * 3)));
+            delay = next;
+        }
+
+        // The time requested by the server is respected, even beyond the maximum delay
+        assertEquals(300_000, jitter.nextDelay(1000, Duration.ofMinutes(5)));
+        BackoffPolicy exponential =
+                BackoffPolicy.exponential(Duration.ofSeconds(1), Duration.ofSeconds(60));
+        assertEquals(300_000, exponential.nextDelay(1000, Duration.ofMinutes(5)));
+        assertEquals(2000, exponential.nextDelay(1000, Duration.ofMillis(500)));
+    }
+
+    @Test
+    void testListenerReceivesTokenEvents() throws IOException, AccessTokenUnavailableException {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        AccessTokenListener listener = mock(AccessTokenListener.class);
+
+        TokenHolder first = getResponseWithoutRefreshToken("first");
+        IOException failure = new IOException("Can not get access token");
+        when(client.requestAccessToken()).thenReturn(first).thenThrow(failure);
+
+        try (ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client)) {
+            factory.addListener(listener);
+
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            assertEquals(1, factory.getCacheHits());
+            assertEquals(1, factory.getCacheMisses());
+            assertTrue(factory.getRemainingLifetime() > 290 * 1000);
+            assertEquals(0, factory.getBackoffTime());
+
+            // Past the must-refresh threshold, the caller waits for the failing refresh
+            factory.incrementTime((300 - 10) * 1000);
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            assertEquals(2, factory.getCacheMisses());
+            assertEquals(1000, factory.getBackoffTime());
+            assertTrue(factory.getRemainingLifetime() <= 10 * 1000);
+        }
+
+        verify(listener).refreshStarted(AccessTokenListener.RefreshCause.INITIAL);
+        verify(listener).refreshStarted(AccessTokenListener.RefreshCause.MUST_REFRESH);
+        verify(listener).tokenFetched(anyLong());
+        verify(listener).tokenFetchFailed(anyLong(), eq(failure));
+        verify(listener, times(2)).blockingWaitCompleted(anyLong());
+    }
+
+    @Test
+    void testTokensPerAudienceAndScopes() throws IOException, AccessTokenUnavailableException {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        TokenHolder first = getResponseWithoutRefreshToken("first");
+        TokenHolder second = getResponseWithoutRefreshToken("second");
+        TokenHolder third = getResponseWithoutRefreshToken("third");
+        when(client.supportsAudiencesAndScopes()).thenReturn(true);
+        when(client.requestAccessToken()).thenReturn(first);
+        when(client.requestAccessToken("https://second", null)).thenReturn(second);
+        when(client.requestAccessToken("https://third", "read write")).thenReturn(third);
+        when(client.requestAccessToken("https://fourth", null)).thenReturn(first);
+
+        try (ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client)) {
+            factory.setMaximumAudiences(2);
+
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            assertEquals(second.getAccessToken(), factory.getAccessToken("https://second", null));
+            factory.incrementTime(2000);
+            assertEquals(
+                    third.getAccessToken(),
+                    factory.getAccessToken("https://third", Set.of("write", "read")));
+            assertEquals(
+                    third.getAccessToken(),
+                    factory.getAccessToken(TokenKey.of("https://third", Set.of("read", "write"))));
+            assertEquals(
+                    TokenKey.of("https://third", Set.of("write", "read")),
+                    TokenKey.of("https://third", new HashSet<>(List.of("read", "write"))));
+
+            verify(client, times(1)).requestAccessToken();
+            verify(client, times(1)).requestAccessToken("https://second", null);
+            verify(client, times(1)).requestAccessToken("https://third", "read write");
+
+            // The least recently used audience is evicted when the maximum is exceeded
+            factory.incrementTime(2000);
+            factory.getAccessToken("https://fourth", null);
+            factory.getAccessToken("https://second", null);
+            verify(client, times(2)).requestAccessToken("https://second", null);
+        }
+    }
+
+    @Test
+    void testTokensPerAudienceRequireSupportingClient() throws IOException {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        try (ConfigurableClockAccessTokenFactory factory = getConfigurableClockFactory(client)) {
+            assertThrows(
+                    UnsupportedOperationException.class,
+                    () -> factory.getAccessToken("https://second", null));
+            assertEquals(0, factory.getBackoffTime());
+        }
+
+        verify(client, never()).requestAccessToken(any(), any());
+    }
+
+    @Test
+    void testTokenSnapshotIsRestored(@TempDir Path directory) throws Exception {
+        Path path = directory.resolve("client.token");
+        String key = Base64.getEncoder().encodeToString(new byte[32]);
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        TokenHolder first = getResponseWithoutRefreshToken("first");
+        when(client.requestAccessToken()).thenReturn(first);
+
+        try (AccessTokenFactory factory = getFactory(client)) {
+            factory.setTokenSnapshotFile(
+                    new TokenSnapshotFile(path, "identity", TokenSnapshotFile.aesKey(key)));
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+        }
+        for (int i = 0; i < 50 && !Files.exists(path); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8).contains("first"));
+
+        // Restarted factory uses the persisted token without calling the authorization server
+        AccessTokenClient restartedClient = mock(AccessTokenClient.class);
+        try (AccessTokenFactory factory = getFactory(restartedClient)) {
+            factory.setTokenSnapshotFile(
+                    new TokenSnapshotFile(path, "identity", TokenSnapshotFile.aesKey(key)));
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            verify(restartedClient, never()).requestAccessToken();
+        }
+
+        // Snapshot is ignored by other clients
+        AccessTokenClient otherClient = mock(AccessTokenClient.class);
+        TokenHolder other = getResponseWithoutRefreshToken("other");
+        when(otherClient.requestAccessToken()).thenReturn(other);
+        try (AccessTokenFactory factory = getFactory(otherClient)) {
+            factory.setTokenSnapshotFile(
+                    new TokenSnapshotFile(path, "other", TokenSnapshotFile.aesKey(key)));
+            assertEquals(other.getAccessToken(), factory.getAccessToken());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testOverriddenLoadAccessTokenIsUsed() throws Exception {
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        TokenHolder loaded = getResponseWithoutRefreshToken("loaded");
+        try (AccessTokenFactory factory =
+                new AccessTokenFactory(client) {
+                    @Override
+                    protected TokenHolder loadAccessToken() {
+                        return loaded;
+                    }
+                }) {
+            assertEquals(loaded.getAccessToken(), factory.getAccessToken());
+        }
+        verify(client, never()).requestAccessToken();
+    }
+
+    @Test
+    void testRefreshSchedulerStartsAgainAfterShutdown() throws Exception {
+        RefreshScheduler stopped = RefreshScheduler.getInstance();
+        AccessTokenFactory.shutdownRefreshScheduler();
+
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        when(client.requestAccessToken()).thenReturn(getResponseWithoutRefreshToken("token"));
+        try (AccessTokenFactory factory = getFactory(client)) {
+            assertEquals("token", factory.getAccessToken());
+        }
+        assertNotSame(stopped, RefreshScheduler.getInstance());
+
+        CompletableFuture<Void> executed = new CompletableFuture<>();
+        RefreshScheduler.getInstance().executor().execute(() -> executed.complete(null));
+        executed.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testTokenStoreSharesTokenBetweenNodes(@TempDir Path directory) throws Exception {
+        for (TokenStore store : List.of(new InMemoryTokenStore(), new FileLockTokenStore(directory))) {
+            AccessTokenClient firstNodeClient = mock(AccessTokenClient.class);
+            AccessTokenClient secondNodeClient = mock(AccessTokenClient.class);
+            TokenHolder first = getResponseWithoutRefreshToken("first");
+            when(firstNodeClient.requestAccessToken()).thenReturn(first);
+
+            try (AccessTokenFactory firstNode = getFactory(firstNodeClient);
+                    AccessTokenFactory secondNode = getFactory(secondNodeClient)) {
+                firstNode.setTokenStore(store, "client");
+                secondNode.setTokenStore(store, "client");
+
+                assertEquals(first.getAccessToken(), firstNode.getAccessToken());
+                assertEquals(first.getAccessToken(), secondNode.getAccessToken());
+            }
+            verify(firstNodeClient, times(1)).requestAccessToken();
+            verify(secondNodeClient, never()).requestAccessToken();
+        }
+    }
+
+    @Test
+    void testTokenStoreWaitsForTokenOfLeaseHolder() throws Exception {
+        TokenStore store = new InMemoryTokenStore();
+        TokenStore.Lease lease = store.tryAcquireLease("client", Duration.ofSeconds(30));
+        AccessTokenClient client = mock(AccessTokenClient.class);
+
+        try (AccessTokenFactory factory = getFactory(client)) {
+            factory.setTokenStore(store, "client");
+
+            CompletableFuture<String> accessToken = factory.getAccessTokenAsync();
+            assertFalse(accessToken.isDone());
+
+            long expiresAt = System.currentTimeMillis() + 300_000;
+            store.put("client", new TokenStore.StoredToken("published", expiresAt), lease);
+            lease.close();
+
+            assertEquals("published", accessToken.get(5, TimeUnit.SECONDS));
+            verify(client, never()).requestAccessToken();
+        }
+    }
+
+    @Test
+    void testTokenStoreFailureAfterRequestKeepsToken() throws Exception {
+        TokenStore store =
+                new InMemoryTokenStore() {
+                    @Override
+                    public void put(String key, StoredToken token, Lease lease) {
+                        throw new IllegalStateException("Store is read-only");
+                    }
+                };
+        AccessTokenClient client = mock(AccessTokenClient.class);
+        TokenHolder first = getResponseWithoutRefreshToken("first");
+        when(client.requestAccessToken()).thenReturn(first);
+
+        try (AccessTokenFactory factory = getFactory(client)) {
+            factory.setTokenStore(store, "client");
+
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+            assertEquals(first.getAccessToken(), factory.getAccessToken());
+        }
+        verify(client, times(1)).requestAccessToken();
+    }
+
+    @Test
+    void testBuilderSharesFactoryWithSameCredentials() {
+        AccessTokenFactoryBuilder builder =
+                new AccessTokenFactoryBuilder()
+                        .withDomain("shared.example.com")
+                        .withClientId("clientId")
+                        .withClientSecret("secret")
+                        .withAudience("https://api.example.com")
+                        .withAuth0Sdk(false);
+
+        // Sharing is opt-in
+        try (AccessTokenFactory separate = builder.buildAuth0()) {
+            assertNotSame(separate, builder.buildAuth0());
+        }
+
+        builder.withShared(true);
+        AccessTokenFactory first = builder.buildAuth0();
+        AccessTokenFactory second = builder.buildAuth0();
+        assertSame(first, second);
+        assertNotSame(first, builder.withAudience("https://other.example.com").buildAuth0());
+        assertNotSame(
+                first,
+                builder.withAudience("https://api.example.com").withShared(false).buildAuth0());
+
+        // Still shared until every holder has closed it
+        first.close();
+        assertSame(second, builder.withShared(true).buildAuth0());
+        second.close();
+        second.close();
+        AccessTokenFactory third = builder.buildAuth0();
+        assertNotSame(second, third);
+
+        // Token store and hedging settings are part of the identity of a shared factory
+        assertNotSame(third, builder.withTokenStore(new InMemoryTokenStore()).buildAuth0());
+        assertNotSame(third, builder.withTokenStore(null).withHedgeDelay(500L).buildAuth0());
+        assertSame(third, builder.withHedgeDelay(null).buildAuth0());
+    }
+
     private TokenHolder getResponseWithRefreshToken(String token) {
         TokenHolder holder = mock(TokenHolder.class);
 
@@ -161,11 +1024,23 @@ public class AccessTokenFactoryTest {
         return holder;
     }
 
+    private static String jwt(String payload) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8))
+                + "."
+                + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+
     private TokenHolder getResponseWithoutRefreshToken(String token) {
+        return getResponseWithoutRefreshToken(token, 300L);
+    }
+
+    private TokenHolder getResponseWithoutRefreshToken(String token, long expiresIn) {
         TokenHolder holder = mock(TokenHolder.class);
 
         when(holder.getAccessToken()).thenReturn(token);
-        when(holder.getExpiresIn()).thenReturn(300L);
+        when(holder.getExpiresIn()).thenReturn(expiresIn);
 
         return holder;
     }
@@ -189,5 +1064,7 @@ public class AccessTokenFactoryTest {
 
         factory.setMinThrottleTime(1L);
         factory.setMaxThrottleTime(600L);
+        factory.setBackoffPolicy(
+                BackoffPolicy.exponential(Duration.ofSeconds(1), Duration.ofSeconds(600)));
     }
 }
@@ -1,34 +1,70 @@
 package org.entur.auth.client;
 
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.google.common.testing.FakeTicker;
 import java.time.Clock;
 import java.time.Instant;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 public class ConfigurableClockAccessTokenFactory extends AccessTokenFactory {
-    private final FakeTicker fakeTicker = new FakeTicker();
+
+    private List<ScheduledRenewal> scheduledRenewals;
 
     public ConfigurableClockAccessTokenFactory(AccessTokenClient client) {
         super(client);
-        this.cache =
-                Caffeine.newBuilder()
-                        .expireAfterWrite(
-                                5, TimeUnit.HOURS) // Set default expireAfterWrite, needed so it can be changed in
-                        // loadAccessToken
-                        .refreshAfterWrite(
-                                5, TimeUnit.HOURS) // Set default refreshAfterWrite, needed so it can be changed in
-                        // loadAccessToken
-                        .ticker(fakeTicker::read)
-                        .build(key -> loadAccessToken());
+    }
+
+    public void runRefreshesOnCallingThread() {
+        this.refreshExecutor = Runnable::run;
+    }
+
+    /**
+     * Runs scheduled background renewals on the calling thread when {@link #incrementTime(long)}
+     * reaches their time, instead of on the shared scheduler.
+     */
+    public void runScheduledRenewalsOnClock() {
+        this.scheduledRenewals = new ArrayList<>();
     }
 
     public void incrementTime(long duration) {
         setCurrentTimeMillis(clock.millis() + duration);
-        fakeTicker.advance(duration, TimeUnit.MILLISECONDS);
+        runDueRenewals();
     }
 
     private void setCurrentTimeMillis(long currentTimeMillis) {
         this.clock = Clock.fixed(Instant.ofEpochMilli(currentTimeMillis), clock.getZone());
     }
+
+    @Override
+    RefreshScheduler.Timeout scheduleRenewal(Runnable renewal, long delayMillis) {
+        if (scheduledRenewals == null) {
+            return super.scheduleRenewal(renewal, delayMillis);
+        }
+        RefreshScheduler.Timeout timeout = new RefreshScheduler.Timeout(renewal, 0);
+        scheduledRenewals.add(new ScheduledRenewal(timeout, renewal, clock.millis() + delayMillis));
+        return timeout;
+    }
+
+    private void runDueRenewals() {
+        if (scheduledRenewals == null) {
+            return;
+        }
+        while (true) {
+            ScheduledRenewal due =
+                    scheduledRenewals.stream()
+                            .filter(renewal -> renewal.runAt() <= clock.millis())
+                            .min(Comparator.comparingLong(ScheduledRenewal::runAt))
+                            .orElse(null);
+            if (due == null) {
+                return;
+            }
+            scheduledRenewals.remove(due);
+            if (!due.timeout().isCancelled()) {
+                due.renewal().run();
+            }
+        }
+    }
+
+    private record ScheduledRenewal(
+            RefreshScheduler.Timeout timeout, Runnable renewal, long runAt) {}
 }
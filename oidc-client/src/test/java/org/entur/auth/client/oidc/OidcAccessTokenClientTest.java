@@ -0,0 +1,302 @@
+package org.entur.auth.client.oidc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.entur.auth.client.AccessTokenFactory;
+import org.entur.auth.client.AccessTokenFactoryBuilder;
+import org.entur.auth.client.HttpTransportOptions;
+import org.entur.auth.client.RetryAfterException;
+import org.entur.auth.client.TokenHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class OidcAccessTokenClientTest {
+    private HttpServer server;
+    private final List<String> requestBodies = new CopyOnWriteArrayList<>();
+    private final List<String> discoveryETags = new CopyOnWriteArrayList<>();
+    private final AtomicInteger discoveryRequests = new AtomicInteger();
+    private int status;
+    private String response;
+    private String retryAfter;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(
+                "/realms/test/.well-known/openid-configuration",
+                exchange -> {
+                    discoveryRequests.incrementAndGet();
+                    discoveryETags.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+                    exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                    if (exchange.getRequestHeaders().containsKey("If-None-Match")) {
+                        exchange.sendResponseHeaders(304, -1);
+                        exchange.close();
+                        return;
+                    }
+                    String issuer = baseUri() + "/realms/test";
+                    byte[] body =
+                            ("{\"issuer\":\""
+                                            + issuer
+                                            + "\",\"token_endpoint\":\""
+                                            + issuer
+                                            + "/protocol/openid-connect/token\","
+                                            + "\"grant_types_supported\":[\"client_credentials\"]}")
+                                    .getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                    exchange.close();
+                });
+        server.createContext("/realms/test/protocol/openid-connect/token", this::token);
+        server.createContext("/oauth/token", this::token);
+        server.start();
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        requestBodies.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (retryAfter != null) {
+            exchange.getResponseHeaders().add("Retry-After", retryAfter);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testRequestAccessToken() throws IOException {
+        status = 200;
+        response =
+                "{\"access_token\":\"abc.def.ghi\",\"scope\":\"read write\",\"expires_in\":86400,"
+                        + "\"token_type\":\"Bearer\",\"extra\":{\"nested\":[1,\"}\"]}}";
+
+        TokenHolder tokenHolder = getClient().requestAccessToken();
+
+        assertEquals("abc.def.ghi", tokenHolder.getAccessToken());
+        assertEquals(86400, tokenHolder.getExpiresIn());
+        assertEquals(
+                "grant_type=client_credentials&client_id=clientId&client_secret=s%26cret"
+                        + "&audience=https%3A%2F%2Fapi.example.com",
+                requestBodies.get(0));
+    }
+
+    @Test
+    void testResponseWithoutExpiresIn() throws IOException {
+        status = 200;
+        long exp = System.currentTimeMillis() / 1000 + 600;
+        String payload =
+                Base64.getUrlEncoder()
+                        .withoutPadding()
+                        .encodeToString(("{\"exp\":" + exp + "}").getBytes(StandardCharsets.UTF_8));
+        response = "{\"access_token\":\"e30." + payload + ".sig\",\"token_type\":\"Bearer\"}";
+
+        // The lifetime is taken from the exp claim of a JWT
+        long expiresIn = getClient().requestAccessToken().getExpiresIn();
+        assertTrue(expiresIn > 590 && expiresIn <= 600, "expiresIn=" + expiresIn);
+
+        // Opaque tokens get the default lifetime
+        response = "{\"access_token\":\"opaque\",\"token_type\":\"Bearer\"}";
+        expiresIn = getClient().requestAccessToken().getExpiresIn();
+        assertTrue(
+                expiresIn > OidcAccessTokenClient.DEFAULT_EXPIRES_IN - 10
+                        && expiresIn <= OidcAccessTokenClient.DEFAULT_EXPIRES_IN,
+                "expiresIn=" + expiresIn);
+    }
+
+    @Test
+    void testErrorResponse() {
+        status = 429;
+        response = "{\"error\":\"too_many_requests\"}";
+
+        assertThrows(IOException.class, () -> getClient().requestAccessToken());
+    }
+
+    @Test
+    void testErrorResponseIsDescribed() {
+        status = 401;
+        response =
+                "{\"error\":\"invalid_client\",\"error_description\":\"Unknown client\"}";
+
+        IOException exception =
+                assertThrows(IOException.class, () -> getClient().requestAccessToken());
+        assertEquals(
+                "Can not retrieve access token, status 401: invalid_client (Unknown client)",
+                exception.getMessage());
+
+        response = "<html>Unauthorized</html>";
+        exception = assertThrows(IOException.class, () -> getClient().requestAccessToken());
+        assertEquals("Can not retrieve access token, status 401", exception.getMessage());
+    }
+
+    @Test
+    void testNonBearerTokenTypeIsRejected() {
+        status = 200;
+        response = "{\"access_token\":\"abc\",\"expires_in\":3600,\"token_type\":\"DPoP\"}";
+
+        assertThrows(IOException.class, () -> getClient().requestAccessToken());
+
+        response = "{\"access_token\":\"abc\",\"expires_in\":3600}";
+
+        assertThrows(IOException.class, () -> getClient().requestAccessToken());
+    }
+
+    @Test
+    void testRetryAfterResponse() {
+        status = 429;
+        retryAfter = "30";
+        response = "{\"error\":\"too_many_requests\"}";
+
+        RetryAfterException exception =
+                assertThrows(RetryAfterException.class, () -> getClient().requestAccessToken());
+        assertEquals(Duration.ofSeconds(30), exception.getRetryAfter());
+
+        assertEquals(
+                Duration.ZERO,
+                OidcAccessTokenClient.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertNull(OidcAccessTokenClient.parseRetryAfter("soon"));
+    }
+
+    @Test
+    void testBuildOidcUsesDiscoveredTokenEndpoint() {
+        status = 200;
+        response = "{\"access_token\":\"abc\",\"expires_in\":3600,\"token_type\":\"bearer\"}";
+
+        AccessTokenFactoryBuilder builder =
+                new AccessTokenFactoryBuilder()
+                        .withDomain(baseUri())
+                        .withRealm("test")
+                        .withClientId("clientId")
+                        .withClientSecret("secret");
+        try (AccessTokenFactory first = builder.buildOidc();
+                AccessTokenFactory second = builder.buildOidc()) {
+            assertEquals("abc", first.getAccessToken());
+            assertEquals("abc", second.getAccessToken());
+        }
+
+        assertEquals(1, discoveryRequests.get());
+        assertEquals(
+                "grant_type=client_credentials&client_id=clientId&client_secret=secret",
+                requestBodies.get(0));
+    }
+
+    @Test
+    void testDiscoveryRevalidatesInBackground() throws Exception {
+        OidcDiscovery discovery =
+                new OidcDiscovery(
+                        OidcDiscovery.issuer(baseUri(), "test"),
+                        HttpClient.newHttpClient(),
+                        Duration.ofSeconds(10),
+                        Duration.ZERO);
+
+        URI tokenEndpoint = discovery.getProviderMetadata().tokenEndpoint();
+        assertEquals(
+                baseUri() + "/realms/test/protocol/openid-connect/token", tokenEndpoint.toString());
+
+        // Expired document is returned immediately and re-validated with the ETag
+        assertEquals(tokenEndpoint, discovery.getProviderMetadata().tokenEndpoint());
+        for (int i = 0; i < 50 && discoveryRequests.get() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(2, discoveryRequests.get());
+        assertTrue(discoveryETags.contains("\"v1\""));
+        assertEquals(tokenEndpoint, discovery.getProviderMetadata().tokenEndpoint());
+    }
+
+    @Test
+    void testDiscoveryRejectsOtherIssuer() {
+        server.createContext(
+                "/realms/other/.well-known/openid-configuration",
+                exchange -> {
+                    byte[] body =
+                            ("{\"issuer\":\""
+                                            + baseUri()
+                                            + "/realms/test\",\"token_endpoint\":\""
+                                            + baseUri()
+                                            + "/realms/test/protocol/openid-connect/token\"}")
+                                    .getBytes(StandardCharsets.UTF_8);
+                    exchange.sendResponseHeaders(200, body.length);
+                    exchange.getResponseBody().write(body);
+                    exchange.close();
+                });
+
+        URI issuer = OidcDiscovery.issuer(baseUri(), "other");
+        OidcDiscovery discovery =
+                new OidcDiscovery(
+                        issuer, HttpClient.newHttpClient(), Duration.ofSeconds(10), Duration.ZERO);
+        IOException exception = assertThrows(IOException.class, discovery::getProviderMetadata);
+        assertTrue(exception.getMessage().contains("does not match " + issuer));
+    }
+
+    @Test
+    void testDiscoveryPerIssuerAndSettings() {
+        URI issuer = OidcDiscovery.issuer("auth.example.com", null);
+        HttpTransportOptions http1 = HttpTransportOptions.DEFAULT.withHttp2(false);
+        assertSame(OidcDiscovery.forIssuer(issuer), OidcDiscovery.forIssuer(issuer));
+        assertSame(OidcDiscovery.forIssuer(issuer, http1), OidcDiscovery.forIssuer(issuer, http1));
+        assertNotSame(OidcDiscovery.forIssuer(issuer), OidcDiscovery.forIssuer(issuer, http1));
+    }
+
+    @Test
+    void testIssuer() {
+        assertEquals(
+                "https://auth.example.com/realms/test/",
+                OidcDiscovery.issuer("auth.example.com", "test").toString());
+        assertEquals(
+                "https://auth.example.com/", OidcDiscovery.issuer("auth.example.com/", null).toString());
+    }
+
+    @Test
+    void testSharedHttpClientPerDomainAndSettings() {
+        HttpTransportOptions http1 = HttpTransportOptions.DEFAULT.withHttp2(false);
+        HttpClient client = SharedHttpClient.forDomain("auth.example.com", http1);
+
+        assertSame(client, SharedHttpClient.forDomain("auth.example.com", http1));
+        assertNotSame(client, SharedHttpClient.forDomain("other.example.com", http1));
+        assertNotSame(
+                client,
+                SharedHttpClient.forDomain(
+                        "auth.example.com", http1.withReadTimeout(Duration.ofSeconds(1))));
+        assertEquals(HttpClient.Version.HTTP_1_1, client.version());
+        assertSame(
+                SharedHttpClient.getInstance(),
+                SharedHttpClient.forDomain("auth.example.com", HttpTransportOptions.DEFAULT));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> HttpTransportOptions.DEFAULT.withConnectTimeout(Duration.ZERO));
+    }
+
+    private String baseUri() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private OidcAccessTokenClient getClient() {
+        return OidcAccessTokenClient.forAuth0(
+                baseUri(),
+                "clientId",
+                "s&cret",
+                "https://api.example.com");
+    }
+}